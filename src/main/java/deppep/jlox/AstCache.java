@@ -0,0 +1,487 @@
+package deppep.jlox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// an on-disk cache of parsed and resolved programs, keyed by a hash of their source.
+// when a script didn't change since last run, we can skip scanning, parsing and resolving
+// altogether and just read the trees back, along with the resolver's scope distances.
+// the format is a compact binary one:
+//     magic, version, key, body length, body crc32, body
+// where the body is a table of all the strings in the program (names, operators, string
+// literals; each one stored once) followed by the trees, written depth first, each node
+// as a tag followed by its fields. anything off when reading (different version or key,
+// bad checksum, truncated or malformed body) and the entry is thrown away: we fall back
+// to the front end, which will store a fresh one.
+class AstCache {
+    private static final int MAGIC = 0x4a4c4f58;  // "JLOX"
+    // bump this whenever the format, or the trees, change.
+    private static final int VERSION = 2;
+
+    private final Path directory;
+
+    AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    static String key(ByteSource source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            source.digest(digest);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // every jvm is required to implement sha-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // returns the cached program, resolved, or null if there is no valid entry for the
+    // key.
+    List<Stmt> load(String key) {
+        Path path = directory.resolve(key + ".ast");
+        if (!Files.isRegularFile(path)) return null;
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key))
+                throw new IOException("stale entry");
+            int length = in.readInt();
+            long checksum = in.readLong();
+            // the body is the rest of the file. a length read from a broken entry is not
+            // to be trusted with an allocation.
+            if (length != in.available()) throw new IOException("corrupt entry");
+            byte[] body = new byte[length];
+            in.readFully(body);
+            if (checksum(body) != checksum) throw new IOException("corrupt entry");
+
+            // resolutions go straight on the new trees: if the entry turns out bad
+            // halfway through, they are dropped with them.
+            return new Reader(new DataInputStream(new ByteArrayInputStream(body))).statements();
+        } catch (IOException | RuntimeException e) {
+            // a corrupt entry is no reason to fail, we just can't use it.
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException _) {
+                // someone else's problem, the entry will be overwritten anyway.
+            }
+            return null;
+        }
+    }
+
+    // saves a program, which must have been resolved without errors.
+    void store(String key, List<Stmt> statements) throws IOException {
+        Writer writer = new Writer();
+        writer.statements(statements);
+        byte[] body = writer.body();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(key);
+        out.writeInt(body.length);
+        out.writeLong(checksum(body));
+        out.write(body);
+
+        // written aside and moved in place, so that concurrent runs never see half an entry.
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.write(temporary, bytes.toByteArray());
+            Files.move(temporary, directory.resolve(key + ".ast"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static long checksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return crc.getValue();
+    }
+
+    // node tags. 0 is for null everywhere.
+    private static final byte ASSIGN = 1, TERNARY = 2, BINARY = 3, SET = 4, SUPER = 5, THIS = 6,
+            UNARY = 7, CALL = 8, GET = 9, ANON_FUNCTION = 10, GROUPING = 11, LITERAL = 12,
+            LOGICAL = 13, VARIABLE = 14;
+    private static final byte BLOCK = 1, CLASS = 2, EXPRESSION = 3, FUNCTION = 4, IF = 5,
+            PRINT = 6, RETURN = 7, WHILE = 8, BREAK = 9, VAR = 10;
+    // value tags.
+    private static final byte TRUE = 1, FALSE = 2, NUMBER = 3, STRING = 4;
+
+    private static class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(nodes);
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> table = new ArrayList<>();
+
+        byte[] body() throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(nodes.size() + table.size() * 8);
+            DataOutputStream data = new DataOutputStream(body);
+            data.writeInt(table.size());
+            for (String string : table) {
+                // not `writeUTF`, which can't take strings longer than 64k.
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+            }
+            nodes.writeTo(data);
+            return body.toByteArray();
+        }
+
+        void statements(List<? extends Stmt> statements) throws IOException {
+            out.writeInt(statements.size());
+            for (Stmt statement : statements) write(statement);
+        }
+
+        private void write(Stmt stmt) throws IOException {
+            if (stmt == null) {
+                out.writeByte(0);
+                return;
+            }
+            try {
+                stmt.accept(this);
+            } catch (Wrapped wrapped) {
+                throw wrapped.cause;
+            }
+        }
+
+        private void write(Expr expr) throws IOException {
+            if (expr == null) {
+                out.writeByte(0);
+                return;
+            }
+            try {
+                expr.accept(this);
+            } catch (Wrapped wrapped) {
+                throw wrapped.cause;
+            }
+        }
+
+        private void expressions(List<Expr> exprs) throws IOException {
+            out.writeInt(exprs.size());
+            for (Expr expr : exprs) write(expr);
+        }
+
+        private void string(String string) throws IOException {
+            Integer index = strings.get(string);
+            if (index == null) {
+                index = table.size();
+                strings.put(string, index);
+                table.add(string);
+            }
+            out.writeInt(index);
+        }
+
+        private void token(Token token) throws IOException {
+            if (token == null) {
+                out.writeByte(0);
+                return;
+            }
+            // shifted by one, to leave 0 for null.
+            out.writeByte(token.type.ordinal() + 1);
+            string(token.lexeme);
+            value(token.literal);
+            out.writeInt(token.line());
+        }
+
+        private void tokens(List<Token> tokens) throws IOException {
+            out.writeInt(tokens.size());
+            for (Token token : tokens) token(token);
+        }
+
+        private void value(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(0);
+            } else if (value instanceof Boolean bool) {
+                out.writeByte(bool ? TRUE : FALSE);
+            } else if (value instanceof Double number) {
+                out.writeByte(NUMBER);
+                out.writeDouble(number);
+            } else if (value instanceof String string) {
+                out.writeByte(STRING);
+                string(string);
+            } else {
+                throw new IOException("Can't store value " + value);
+            }
+        }
+
+        private void depth(Expr expr) throws IOException {
+            out.writeInt(expr.depth);
+        }
+
+        // visitors can't throw checked exceptions, so we smuggle them out.
+        private static class Wrapped extends RuntimeException {
+            final IOException cause;
+
+            Wrapped(IOException cause) {
+                super(null, null, false, false);
+                this.cause = cause;
+            }
+        }
+
+        private interface Action {
+            void run() throws IOException;
+        }
+
+        private Void node(int tag, Action fields) {
+            try {
+                out.writeByte(tag);
+                fields.run();
+            } catch (IOException e) {
+                throw new Wrapped(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            return node(ASSIGN, () -> { token(expr.name); write(expr.value); depth(expr); });
+        }
+
+        @Override
+        public Void visitTernaryExpr(Expr.Ternary expr) {
+            return node(TERNARY, () -> {
+                write(expr.left); token(expr.first); write(expr.middle); token(expr.second); write(expr.right);
+            });
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            return node(BINARY, () -> { write(expr.left); token(expr.operator); write(expr.right); });
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            return node(SET, () -> { write(expr.object); token(expr.name); write(expr.value); });
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr) {
+            return node(SUPER, () -> { token(expr.keyword); token(expr.method); depth(expr); });
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            return node(THIS, () -> { token(expr.keyword); depth(expr); });
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            return node(UNARY, () -> { token(expr.operator); write(expr.right); });
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            return node(CALL, () -> { write(expr.callee); token(expr.paren); expressions(expr.arguments); });
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            return node(GET, () -> { write(expr.object); token(expr.name); });
+        }
+
+        @Override
+        public Void visitAnonFunctionExpr(Expr.AnonFunction expr) {
+            return node(ANON_FUNCTION, () -> { tokens(expr.params); statements(expr.body); });
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            return node(GROUPING, () -> write(expr.expression));
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            return node(LITERAL, () -> value(expr.value));
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            return node(LOGICAL, () -> { write(expr.left); token(expr.operator); write(expr.right); });
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            return node(VARIABLE, () -> { token(expr.name); depth(expr); });
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            return node(BLOCK, () -> statements(stmt.statements));
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            return node(CLASS, () -> { token(stmt.name); write(stmt.superclass); statements(stmt.methods); });
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            return node(EXPRESSION, () -> write(stmt.expression));
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            return node(FUNCTION, () -> { token(stmt.name); write(stmt.definition); });
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            return node(IF, () -> { write(stmt.condition); write(stmt.thenBranch); write(stmt.elseBranch); });
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            return node(PRINT, () -> write(stmt.expression));
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            return node(RETURN, () -> { token(stmt.keyword); write(stmt.value); });
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            return node(WHILE, () -> { token(stmt.keyword); write(stmt.condition); write(stmt.body); });
+        }
+
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt) {
+            return node(BREAK, () -> token(stmt.keyword));
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            return node(VAR, () -> { token(stmt.name); write(stmt.initializer); });
+        }
+    }
+
+    private static class Reader {
+        private static final TokenType[] TYPES = TokenType.values();
+
+        private final DataInputStream in;
+        private final String[] table;
+
+        Reader(DataInputStream in) throws IOException {
+            this.in = in;
+            table = new String[in.readInt()];
+            for (int i = 0; i < table.length; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                // names are interned: all tokens with the same lexeme share one string.
+                table[i] = new String(bytes, StandardCharsets.UTF_8).intern();
+            }
+        }
+
+        List<Stmt> statements() throws IOException {
+            int size = in.readInt();
+            List<Stmt> statements = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) statements.add(stmt());
+            return statements;
+        }
+
+        private List<Stmt.Function> functions() throws IOException {
+            List<Stmt.Function> functions = new ArrayList<>();
+            for (Stmt stmt : statements()) functions.add((Stmt.Function) stmt);
+            return functions;
+        }
+
+        private List<Expr> expressions() throws IOException {
+            int size = in.readInt();
+            List<Expr> exprs = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) exprs.add(expr());
+            return exprs;
+        }
+
+        private String string() throws IOException {
+            return table[in.readInt()];
+        }
+
+        private Token token() throws IOException {
+            int type = in.readUnsignedByte();
+            if (type == 0) return null;
+            return new Token(TYPES[type - 1], string(), value(), in.readInt());
+        }
+
+        private List<Token> tokens() throws IOException {
+            int size = in.readInt();
+            List<Token> tokens = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) tokens.add(token());
+            return tokens;
+        }
+
+        private Object value() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case 0: return null;
+                case TRUE: return true;
+                case FALSE: return false;
+                case NUMBER: return in.readDouble();
+                case STRING: return string();
+                default: throw new IOException("Unknown value tag " + tag);
+            }
+        }
+
+        private <E extends Expr> E resolved(E expr) throws IOException {
+            expr.depth = in.readInt();
+            return expr;
+        }
+
+        private Expr expr() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case 0: return null;
+                case ASSIGN: return resolved(new Expr.Assign(token(), expr()));
+                case TERNARY: return new Expr.Ternary(expr(), token(), expr(), token(), expr());
+                case BINARY: return new Expr.Binary(expr(), token(), expr());
+                case SET: return new Expr.Set(expr(), token(), expr());
+                case SUPER: return resolved(new Expr.Super(token(), token()));
+                case THIS: return resolved(new Expr.This(token()));
+                case UNARY: return new Expr.Unary(token(), expr());
+                case CALL: return new Expr.Call(expr(), token(), expressions());
+                case GET: return new Expr.Get(expr(), token());
+                case ANON_FUNCTION: return new Expr.AnonFunction(tokens(), statements());
+                case GROUPING: return new Expr.Grouping(expr());
+                case LITERAL: return new Expr.Literal(value());
+                case LOGICAL: return new Expr.Logical(expr(), token(), expr());
+                case VARIABLE: return resolved(new Expr.Variable(token()));
+                default: throw new IOException("Unknown expression tag " + tag);
+            }
+        }
+
+        private Stmt stmt() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case 0: return null;
+                case BLOCK: return new Stmt.Block(statements());
+                case CLASS: return new Stmt.Class(token(), (Expr.Variable) expr(), functions());
+                case EXPRESSION: return new Stmt.Expression(expr());
+                case FUNCTION: return new Stmt.Function(token(), (Expr.AnonFunction) expr());
+                case IF: return new Stmt.If(expr(), stmt(), stmt());
+                case PRINT: return new Stmt.Print(expr());
+                case RETURN: return new Stmt.Return(token(), expr());
+                case WHILE: return new Stmt.While(token(), expr(), stmt());
+                case BREAK: return new Stmt.Break(token());
+                case VAR: return new Stmt.Var(token(), expr());
+                default: throw new IOException("Unknown statement tag " + tag);
+            }
+        }
+    }
+}
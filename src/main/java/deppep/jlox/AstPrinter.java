@@ -1,10 +1,29 @@
 package deppep.jlox;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 // since this implements the visitors interface, it should
 // implement visit methods for all expressions types
 class AstPrinter implements Expr.Visitor<String> {
+	// pending work: expressions still to print, or text to append as it is.
+	// we keep it ourselves rather than recurring, so that nesting is only limited by
+	// the heap. a visit returns what comes first in the node's text, and schedules
+	// its children, and whatever goes in between them, with `parenthesize`.
+	private final Deque<Object> work = new ArrayDeque<>();
+
 	String print(Expr expr) {
-		return expr.accept(this);
+		StringBuilder builder = new StringBuilder();
+		work.push(expr);
+		while (!work.isEmpty()) {
+			Object next = work.pop();
+			if (next instanceof Expr pending) {
+				builder.append(pending.accept(this));
+			} else {
+				builder.append((String) next);
+			}
+		}
+		return builder.toString();
 	}
 
 	@Override
@@ -56,7 +75,7 @@ class AstPrinter implements Expr.Visitor<String> {
 
 	@Override
 	public String visitVariableExpr(Expr.Variable expr) {
-		return parenthesize("var", expr);
+		return parenthesize("var " + expr.name.lexeme);
 	}
 
 	@Override
@@ -80,15 +99,12 @@ class AstPrinter implements Expr.Visitor<String> {
 	}
 
 	private String parenthesize(String name, Expr... exprs) {
-		StringBuilder builder = new StringBuilder();
-
-		builder.append("(").append(name);
-		for (Expr expr: exprs) {
-			builder.append(" ");
-			builder.append(expr.accept(this));
+		// a stack: what's pushed last is printed first.
+		work.push(")");
+		for (int i = exprs.length - 1; i >= 0; i--) {
+			work.push(exprs[i]);
+			work.push(" ");
 		}
-		builder.append(")");
-
-		return builder.toString();
+		return "(" + name;
 	}
 }
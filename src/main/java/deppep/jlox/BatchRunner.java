@@ -0,0 +1,71 @@
+package deppep.jlox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// runs one program over many inputs at once, on a pool of threads. the program is
+// parsed and resolved once: each run gets a context with globals of its own, among
+// which `input`, with the content of its input file as a string. runs write to
+// buffers of their own, handed back in order when they are all done.
+class BatchRunner {
+    record Run(Path input, String out, String err, int status, long nanos) {}
+
+    private final List<Stmt> program;
+    private final int threads;
+
+    // `program` must have been resolved: resolutions live on the trees, which runs
+    // only read, see `Interpreter.resolve`.
+    BatchRunner(List<Stmt> program, int threads) {
+        this.program = program;
+        this.threads = threads;
+    }
+
+    List<Run> run(List<Path> inputs) throws IOException, InterruptedException {
+        AtomicInteger count = new AtomicInteger();
+        // same stack as the main thread, see `Lox.main`.
+        ExecutorService pool = Executors.newFixedThreadPool(threads,
+                task -> new Thread(null, task, "jlox-batch-" + count.incrementAndGet(), Lox.STACK_SIZE));
+        try {
+            List<Future<Run>> futures = new ArrayList<>();
+            for (Path input : inputs) {
+                futures.add(pool.submit(() -> run(input)));
+            }
+            List<Run> runs = new ArrayList<>();
+            for (Future<Run> future : futures) {
+                runs.add(future.get());
+            }
+            return runs;
+        } catch (ExecutionException error) {
+            if (error.getCause() instanceof IOException cause) throw cause;
+            throw new IllegalStateException(error.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Run run(Path input) throws IOException {
+        String text = Files.readString(input);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        LoxContext context = new LoxContext(
+                new PrintStream(out, false, StandardCharsets.UTF_8),
+                new PrintStream(err, false, StandardCharsets.UTF_8));
+        context.interpreter().globals.define("input", text);
+
+        long start = System.nanoTime();
+        int status = context.interpret(program);
+        long nanos = System.nanoTime() - start;
+        return new Run(input, out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8), status, nanos);
+    }
+}
@@ -0,0 +1,109 @@
+package deppep.jlox;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// how much work a script may do, for running code we don't trust. the interpreter
+// spends one unit of fuel at every loop iteration and every call, and stops with a
+// runtime error once it runs out, or once someone (like the timer of `timeout`)
+// sets `stop`. these are the only places where a program can keep going without
+// end, and checking them is a decrement and two compares. recursion ends sooner or
+// later on the stack, which the interpreter turns into a runtime error too, see
+// `Interpreter.visitCallExpr`.
+//
+// memory is accounted too, roughly: the bytes a run allocates for environments,
+// variables, closures, instances, fields, strings and the like, at sizes for a
+// 64-bit jvm with compressed pointers. this is what a run allocated, not what it
+// holds on to: garbage counts as well, so the quota bounds allocations over a whole
+// run. past it, a run stops at the next check, or right away for allocations which
+// would be large, like strings.
+//
+// an interpreter and its fibers share a budget. they spend fuel and account memory
+// without synchronization: they may overdraw a little. a fiber blocked on a channel
+// spends nothing, and won't notice a timeout until it wakes up.
+class Budget {
+    static final long UNLIMITED = Long.MAX_VALUE;
+
+    // approximate sizes, in bytes.
+    static final long ENVIRONMENT = 104; // the frame and its two arrays of four
+    static final long VARIABLE = 24;     // a slot, with its share of the arrays doubling
+    static final long GLOBAL = 56;       // an entry in the globals' map, and its table
+    static final long FUNCTION = 32;
+    static final long INSTANCE = 88;     // the instance and its empty map
+    static final long FIELD = 40;
+    static final long STRING = 40;       // plus a byte per character
+    static final long ARRAY = 16;        // plus 4 bytes per element
+
+    // one thread for the timeouts of all contexts: it only flips flags.
+    private static final ScheduledExecutorService TIMER = timer();
+
+    // defaults for every context with `-Djlox.fuel=<units>`, `-Djlox.quota=<bytes>`
+    // and `-Djlox.timeout=<ms>`.
+    private long limit = Long.getLong("jlox.fuel", UNLIMITED);
+    private long quota = Long.getLong("jlox.quota", UNLIMITED);
+    private Duration timeout = Long.getLong("jlox.timeout") != null ? Duration.ofMillis(Long.getLong("jlox.timeout")) : null;
+    private ScheduledFuture<?> deadline;
+
+    // what's left to spend.
+    long fuel = UNLIMITED;
+    // bytes allocated by the run. read from other threads, it may lag a little.
+    long allocated;
+    // why to stop, set from other threads. null to keep going.
+    volatile String stop;
+
+    void limit(long fuel) {
+        this.limit = fuel;
+    }
+
+    void quota(long bytes) {
+        this.quota = bytes;
+    }
+
+    // null for no timeout.
+    void timeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    // refills the budget and starts the clock, for a run.
+    void start() {
+        fuel = limit;
+        allocated = 0;
+        stop = null;
+        if (timeout != null) {
+            deadline = TIMER.schedule(() -> { stop = "Timed out."; }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    void finish() {
+        if (deadline != null) {
+            deadline.cancel(false);
+            deadline = null;
+        }
+    }
+
+    // accounts for `bytes`, and returns false past the quota: the run then stops at
+    // the next check. callers about to allocate a lot stop right away.
+    boolean allocate(long bytes) {
+        if ((allocated += bytes) <= quota) return true;
+        stop = "Out of memory.";
+        return false;
+    }
+
+    RuntimeError exhausted(Token token) {
+        String reason = stop;
+        return new RuntimeError(token, reason != null ? reason : "Out of fuel.");
+    }
+
+    private static ScheduledExecutorService timer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "jlox-budget");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
@@ -0,0 +1,64 @@
+package deppep.jlox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+// a source file seen as raw bytes, one `char` per byte. this lets the scanner work
+// directly over a read-only memory mapping of the file: no `readAllBytes` copy, no
+// decoding to a java string. all of lox syntax is ascii, so the scanner doesn't
+// care about the rest. the only place where utf-8 matters is text the user wrote
+// in string literals, and that's decoded only when a lexeme is materialized.
+class ByteSource implements CharSequence {
+    private final ByteBuffer bytes;
+
+    ByteSource(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    // note a mapping is addressed by int, hence files up to 2GB.
+    static ByteSource map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed.
+            return new ByteSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteSource(bytes.slice(start, end - start));
+    }
+
+    // feeds the whole source to a digest, without copying it.
+    void digest(MessageDigest digest) {
+        digest.update(bytes.duplicate().clear());
+    }
+
+    String decode(int start, int end) {
+        byte[] text = new byte[end - start];
+        bytes.get(start, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        // one char per byte, as promised by `charAt`. use `decode` for actual text.
+        byte[] text = new byte[length()];
+        bytes.get(0, text);
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,68 @@
+package deppep.jlox;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// a bounded queue for fibers to talk over, see `Fiber`.
+//   var c = channel(1);
+//   spawn(fun () { send(c, "hi"); });
+//   print receive(c); // hi
+// `send` blocks while the channel is full, `receive` while it's empty. blocked
+// fibers park their virtual thread, not the carrier one.
+class Channel {
+    // queues don't hold nulls.
+    private static final Object NIL = new Object();
+
+    private final BlockingQueue<Object> queue;
+
+    private Channel(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    static void define(Environment globals) {
+        globals.define("channel", new NativeFunction("channel", 1, (interpreter, arguments) -> {
+            if (!(arguments.get(0) instanceof Double capacity) || capacity < 1 || capacity != Math.floor(capacity)) {
+                throw new NativeFunction.Error("Channel capacity must be a positive integer.");
+            }
+            if (interpreter != null && !interpreter.budget.allocate(Budget.ARRAY + 4 * capacity.longValue())) {
+                throw new NativeFunction.Error("Out of memory.");
+            }
+            return new Channel(capacity.intValue());
+        }));
+        globals.define("send", new NativeFunction("send", 2, (interpreter, arguments) -> {
+            channel(arguments.get(0)).send(arguments.get(1));
+            return null;
+        }));
+        globals.define("receive", new NativeFunction("receive", 1, (interpreter, arguments) ->
+                channel(arguments.get(0)).receive()));
+    }
+
+    private static Channel channel(Object value) {
+        if (!(value instanceof Channel channel)) throw new NativeFunction.Error("Expect a channel.");
+        return channel;
+    }
+
+    void send(Object value) {
+        try {
+            queue.put(value == null ? NIL : value);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new NativeFunction.Error("Interrupted while sending.");
+        }
+    }
+
+    Object receive() {
+        try {
+            Object value = queue.take();
+            return value == NIL ? null : value;
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new NativeFunction.Error("Interrupted while receiving.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
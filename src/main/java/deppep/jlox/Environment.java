@@ -1,21 +1,56 @@
 package deppep.jlox;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 class Environment {
-	final Environment enclosing;
-	private final Map<String, Object> values = new HashMap<>();
+	// globals are shared by fibers, which run on threads of their own (see `Fiber`),
+	// hence they live in a concurrent map. these can't hold nulls, so nil goes in as
+	// `NIL`. locals are not synchronized: those a fiber shares with others through
+	// closures are not safe to write.
+	private static final Object NIL = new Object();
+	// where poisoned frames lead, see `poison`.
+	private static final Environment POISONED = new Environment((Environment) null);
+
+	static {
+		POISONED.enclosing = POISONED;
+		POISONED.poisoned = true;
+	}
+
+	// not final: recycled frames get a new one, see `Interpreter.frame`.
+	Environment enclosing;
+	// the globals. null for local scopes.
+	private final Map<String, Object> values;
+	// the locals: a handful at most, so they are kept in arrays and searched in
+	// order. cheaper than a map, and reused as they are when a frame is recycled.
+	private String[] names;
+	private Object[] slots;
+	private int size;
+	private boolean poisoned;
 
 	// global scope
 	Environment() {
 		enclosing = null;
+		values = new ConcurrentHashMap<>();
 	}
 
 	// local scopes
 	Environment(Environment enclosing) {
 		this.enclosing = enclosing;
+		values = null;
+		names = new String[4];
+		slots = new Object[4];
+	}
+
+	private static Object wrap(Object value) {
+		return value == null ? NIL : value;
+	}
+
+	private static Object unwrap(Object value) {
+		return value == NIL ? null : value;
 	}
 
 	void define(String name, Object value) {
@@ -28,18 +63,80 @@ class Environment {
 		 * this is no trivial choice. the goal of this is to allow
 		 * for a better REPL, where redefining a variable is common
 		 * and having error at each redefinition would be annoying */
-		values.put(name, value);
+		if (values != null) {
+			values.put(name, wrap(value));
+			return;
+		}
+		int index = index(name);
+		if (index >= 0) {
+			slots[index] = value;
+			return;
+		}
+		if (poisoned) throw recycled();
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			slots = Arrays.copyOf(slots, size * 2);
+		}
+		names[size] = name;
+		slots[size++] = value;
+	}
+
+	private int index(String name) {
+		for (int i = 0; i < size; i++) {
+			if (names[i].equals(name)) return i;
+		}
+		return -1;
+	}
+
+	// empties a frame for reuse. the enclosing scope is set by whoever takes it.
+	void clear() {
+		Arrays.fill(slots, 0, size, null);
+		size = 0;
+		enclosing = null;
+	}
+
+	// empties a frame for good, in debug mode (see `Interpreter.recycle`): a lookup
+	// going through it fails, rather than finding someone else's variables.
+	void poison() {
+		clear();
+		enclosing = POISONED;
+		poisoned = true;
+	}
+
+	private static IllegalStateException recycled() {
+		return new IllegalStateException("A recycled frame is still in use.");
+	}
+
+	// the bindings of this scope, nil as null. see `LoxScriptEngine`, which reuses
+	// interpreters and puts their globals back as they were after every script.
+	Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new HashMap<>();
+		values.forEach((name, value) -> snapshot.put(name, unwrap(value)));
+		return snapshot;
+	}
+
+	void restore(Map<String, Object> snapshot) {
+		values.clear();
+		snapshot.forEach(this::define);
 	}
 
 	Object getAt(int distance, String name) {
 		// don't have to check for the variable to be there: we are assuming
 		// that the resolver did its job right. this is delicate, since it makes
 		// for a strong coupling between the environment and the resolver.
-		return ancestor(distance).values.get(name);
+		return ancestor(distance).lookup(name);
+	}
+
+	private Object lookup(String name) {
+		if (values != null) return unwrap(values.get(name));
+		int index = index(name);
+		if (index >= 0) return slots[index];
+		if (poisoned) throw recycled();
+		return null;
 	}
 
 	void assignAt(int distance, Token name, Object value) {
-		ancestor(distance).values.put(name.lexeme, value);
+		ancestor(distance).define(name.lexeme, value);
 	}
 
 	Environment ancestor(int distance) {
@@ -51,9 +148,14 @@ class Environment {
 		return environment;
 	}
 
+	// the flat interpreter has no tokens to hand out, it checks this before `getAt`.
+	boolean isDefined(String name) {
+		return values != null ? values.containsKey(name) : index(name) >= 0;
+	}
+
 	Object get(Token name) {
-		if (values.containsKey(name.lexeme))
-			return values.get(name.lexeme);
+		if (isDefined(name.lexeme))
+			return lookup(name.lexeme);
 
 		if (enclosing != null)
 			return enclosing.get(name);
@@ -66,8 +168,8 @@ class Environment {
 	}
 
 	void assign(Token name, Object value) {
-		if (values.containsKey(name.lexeme)) {
-			values.put(name.lexeme, value);
+		if (isDefined(name.lexeme)) {
+			define(name.lexeme, value);
 			return;
 		}
 
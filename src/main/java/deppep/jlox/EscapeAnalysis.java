@@ -0,0 +1,64 @@
+package deppep.jlox;
+
+import java.util.List;
+
+// tells whether the frame of a call may outlive it. that happens only when something
+// holds on to the frame as its closure: a function or class declared in the body,
+// or a function expression. `this` and bound methods close over the function's own
+// closure instead, and fibers and workers run in frames of their own. frames which
+// can't escape are recycled, see `Interpreter.frame`.
+//
+// conservative: a function expression anywhere in the body counts, even one which
+// never runs.
+final class EscapeAnalysis {
+    private EscapeAnalysis() {}
+
+    static boolean escapes(Expr.AnonFunction function) {
+        return any(function.body);
+    }
+
+    private static boolean any(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (escapes(statement)) return true;
+        }
+        return false;
+    }
+
+    private static boolean escapes(Stmt stmt) {
+        if (stmt == null) return false;
+        if (stmt instanceof Stmt.Expression expression) return escapes(expression.expression);
+        if (stmt instanceof Stmt.Var var) return escapes(var.initializer);
+        if (stmt instanceof Stmt.Block block) return any(block.statements);
+        if (stmt instanceof Stmt.If ifStmt) {
+            return escapes(ifStmt.condition) || escapes(ifStmt.thenBranch) || escapes(ifStmt.elseBranch);
+        }
+        if (stmt instanceof Stmt.Return returnStmt) return escapes(returnStmt.value);
+        if (stmt instanceof Stmt.While whileStmt) return escapes(whileStmt.condition) || escapes(whileStmt.body);
+        if (stmt instanceof Stmt.Print print) return escapes(print.expression);
+        if (stmt instanceof Stmt.Break) return false;
+        // functions and classes.
+        return true;
+    }
+
+    private static boolean escapes(Expr expr) {
+        if (expr == null) return false;
+        if (expr instanceof Expr.Binary binary) return escapes(binary.left) || escapes(binary.right);
+        if (expr instanceof Expr.Call call) {
+            if (escapes(call.callee)) return true;
+            for (Expr argument : call.arguments) {
+                if (escapes(argument)) return true;
+            }
+            return false;
+        }
+        if (expr instanceof Expr.Logical logical) return escapes(logical.left) || escapes(logical.right);
+        if (expr instanceof Expr.Assign assign) return escapes(assign.value);
+        if (expr instanceof Expr.Grouping grouping) return escapes(grouping.expression);
+        if (expr instanceof Expr.Unary unary) return escapes(unary.right);
+        if (expr instanceof Expr.Get get) return escapes(get.object);
+        if (expr instanceof Expr.Set set) return escapes(set.object) || escapes(set.value);
+        if (expr instanceof Expr.Ternary ternary) {
+            return escapes(ternary.left) || escapes(ternary.middle) || escapes(ternary.right);
+        }
+        return expr instanceof Expr.AnonFunction;
+    }
+}
@@ -14,14 +14,17 @@
  *     Literal -> Object value;
  *     Logical -> Expr left, Token operator, Expr right;
  *     Variable -> Token name;
- * automatically generated with `generate_ast.py` on 28/05/25 17:53.
+ * automatically generated with `generate_ast.py` on 18/10/26 21:12.
 */
 package deppep.jlox;
 
 import java.util.List;
 
 
-abstract class Expr {
+abstract sealed class Expr permits
+        Expr.Assign, Expr.Ternary, Expr.Binary, Expr.Set, Expr.Super,
+        Expr.This, Expr.Unary, Expr.Call, Expr.Get, Expr.AnonFunction,
+        Expr.Grouping, Expr.Literal, Expr.Logical, Expr.Variable {
     interface Visitor<R> {
         R visitAssignExpr(Assign expr);
         R visitTernaryExpr(Ternary expr);
@@ -39,7 +42,7 @@ abstract class Expr {
         R visitVariableExpr(Variable expr);
     }
 
-    static class Assign extends Expr {
+    static final class Assign extends Expr {
         Assign(Token name, Expr value) {
             this.name=name;
             this.value=value;
@@ -54,7 +57,7 @@ abstract class Expr {
         final Expr value;
     }
 
-    static class Ternary extends Expr {
+    static final class Ternary extends Expr {
         Ternary(Expr left, Token first, Expr middle, Token second, Expr right) {
             this.left=left;
             this.first=first;
@@ -75,7 +78,7 @@ abstract class Expr {
         final Expr right;
     }
 
-    static class Binary extends Expr {
+    static final class Binary extends Expr {
         Binary(Expr left, Token operator, Expr right) {
             this.left=left;
             this.operator=operator;
@@ -92,7 +95,7 @@ abstract class Expr {
         final Expr right;
     }
 
-    static class Set extends Expr {
+    static final class Set extends Expr {
         Set(Expr object, Token name, Expr value) {
             this.object=object;
             this.name=name;
@@ -109,7 +112,7 @@ abstract class Expr {
         final Expr value;
     }
 
-    static class Super extends Expr {
+    static final class Super extends Expr {
         Super(Token keyword, Token method) {
             this.keyword=keyword;
             this.method=method;
@@ -124,7 +127,7 @@ abstract class Expr {
         final Token method;
     }
 
-    static class This extends Expr {
+    static final class This extends Expr {
         This(Token keyword) {
             this.keyword=keyword;
         }
@@ -137,7 +140,7 @@ abstract class Expr {
         final Token keyword;
     }
 
-    static class Unary extends Expr {
+    static final class Unary extends Expr {
         Unary(Token operator, Expr right) {
             this.operator=operator;
             this.right=right;
@@ -152,7 +155,7 @@ abstract class Expr {
         final Expr right;
     }
 
-    static class Call extends Expr {
+    static final class Call extends Expr {
         Call(Expr callee, Token paren, List<Expr> arguments) {
             this.callee=callee;
             this.paren=paren;
@@ -169,7 +172,7 @@ abstract class Expr {
         final List<Expr> arguments;
     }
 
-    static class Get extends Expr {
+    static final class Get extends Expr {
         Get(Expr object, Token name) {
             this.object=object;
             this.name=name;
@@ -184,7 +187,7 @@ abstract class Expr {
         final Token name;
     }
 
-    static class AnonFunction extends Expr {
+    static final class AnonFunction extends Expr {
         AnonFunction(List<Token> params, List<Stmt> body) {
             this.params=params;
             this.body=body;
@@ -197,9 +200,11 @@ abstract class Expr {
 
         final List<Token> params;
         final List<Stmt> body;
+        // whether calls may leak their frame, see `EscapeAnalysis`.
+        Boolean escapes = null;
     }
 
-    static class Grouping extends Expr {
+    static final class Grouping extends Expr {
         Grouping(Expr expression) {
             this.expression=expression;
         }
@@ -212,7 +217,7 @@ abstract class Expr {
         final Expr expression;
     }
 
-    static class Literal extends Expr {
+    static final class Literal extends Expr {
         Literal(Object value) {
             this.value=value;
         }
@@ -225,7 +230,7 @@ abstract class Expr {
         final Object value;
     }
 
-    static class Logical extends Expr {
+    static final class Logical extends Expr {
         Logical(Expr left, Token operator, Expr right) {
             this.left=left;
             this.operator=operator;
@@ -242,7 +247,7 @@ abstract class Expr {
         final Expr right;
     }
 
-    static class Variable extends Expr {
+    static final class Variable extends Expr {
         Variable(Token name) {
             this.name=name;
         }
@@ -255,6 +260,9 @@ abstract class Expr {
         final Token name;
     }
 
+    // set by the resolver: how many scopes up a variable lives, -1 for globals.
+    int depth = -1;
+
     abstract <R> R accept(Visitor<R> visitor);
 }
 
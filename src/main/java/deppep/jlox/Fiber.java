@@ -0,0 +1,60 @@
+package deppep.jlox;
+
+// a lox function running on a virtual thread of its own.
+//   var f = spawn(fun () { return 1 + 2; });
+//   print join(f); // 3
+// fibers share globals, which are safe to read and write from any of them (see
+// `Environment`). the locals a function closes over are not: two fibers updating
+// the same captured variable race, and should talk over a `Channel` instead.
+// runtime errors in a fiber are rethrown by `join`.
+class Fiber {
+    private final Thread thread;
+    private Object result;
+    private RuntimeError error;
+
+    private Fiber(Interpreter interpreter, LoxCallable function) {
+        thread = Thread.startVirtualThread(() -> {
+            try {
+                result = function.call0(interpreter);
+            } catch (RuntimeError error) {
+                this.error = error;
+            } finally {
+                // the run which spawned us may be over, and won't flush for us.
+                interpreter.out.flush();
+            }
+        });
+    }
+
+    static void define(Environment globals) {
+        globals.define("spawn", new NativeFunction("spawn", 1, (interpreter, arguments) -> {
+            // flat functions bring an interpreter which can't be shared across threads.
+            if (interpreter == null) throw new NativeFunction.Error("Fibers need the tree interpreter.");
+            if (!(arguments.get(0) instanceof LoxCallable function) || function.arity() != 0) {
+                throw new NativeFunction.Error("Can only spawn functions taking no arguments.");
+            }
+            // the fiber runs in an interpreter of its own: `environment` is per thread.
+            return new Fiber(interpreter.fiber(), function);
+        }));
+        globals.define("join", new NativeFunction("join", 1, (interpreter, arguments) -> {
+            if (!(arguments.get(0) instanceof Fiber fiber)) throw new NativeFunction.Error("Can only join fibers.");
+            return fiber.join();
+        }));
+    }
+
+    Object join() {
+        try {
+            // fields written by the fiber are visible after `join` returns.
+            thread.join();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new NativeFunction.Error("Interrupted while joining a fiber.");
+        }
+        if (error != null) throw error;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "<fiber>";
+    }
+}
@@ -0,0 +1,373 @@
+package deppep.jlox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// a resolved program encoded in a few flat int arrays, rather than as a tree of objects.
+// each node takes four ints: a header, with its line and kind, and three operands,
+// whose meaning depends on the kind (see the table below). operands are other nodes'
+// indices, indices in the constants or names side tables, resolved scope distances,
+// operator types, or indices of lists of nodes, which are stored in a separate array
+// as a size followed by elements. -1 stands for a missing node, and for globals in place
+// of a distance. nodes are laid out in the order they appear in the source, children
+// before their parents, so walking the program mostly reads memory in sequence.
+// `FlatInterpreter` evaluates this directly.
+//
+//     kind           operand a       operand b       operand c
+//     LITERAL        constant
+//     VARIABLE       name            distance
+//     ASSIGN         name            value           distance
+//     UNARY          operator        right
+//     BINARY         operator        left            right
+//     LOGICAL        operator        left            right
+//     TERNARY        left            middle          right
+//     GROUPING       expression
+//     CALL           callee          arguments list
+//     GET            object          name
+//     SET            object          name            value
+//     THIS           distance
+//     SUPER          method name     distance
+//     FUNCTION       parameters list body list       name (or -1 for anonymous)
+//     EXPRESSION     expression
+//     PRINT          expression
+//     VAR            name            initializer
+//     BLOCK          statements list
+//     IF             condition       then            else
+//     WHILE          condition       body
+//     BREAK
+//     RETURN         value
+//     DECLARATION    name            function
+//     CLASS          name            superclass      methods list
+class FlatAst {
+    static final int LITERAL = 1, VARIABLE = 2, ASSIGN = 3, UNARY = 4, BINARY = 5, LOGICAL = 6,
+            TERNARY = 7, GROUPING = 8, CALL = 9, GET = 10, SET = 11, THIS = 12, SUPER = 13,
+            FUNCTION = 14, EXPRESSION = 15, PRINT = 16, VAR = 17, BLOCK = 18, IF = 19, WHILE = 20,
+            BREAK = 21, RETURN = 22, DECLARATION = 23, CLASS = 24;
+
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int ARRAY_HEADER_BYTES = 16;
+    // lines take the 24 bits of the header above the kind. those past are reported as
+    // this one, rather than wrapping around to some line near the top.
+    static final int MAX_LINE = (1 << 24) - 1;
+
+    private int[] nodes = new int[256];
+    private int size = 0;
+    private int[] lists = new int[64];
+    private int listsSize = 0;
+    private Object[] constants;
+    private String[] names;
+    // the list of top-level statements.
+    private int program;
+
+    private FlatAst() {}
+
+    static FlatAst encode(List<Stmt> statements) {
+        Encoder encoder = new Encoder();
+        FlatAst ast = encoder.ast;
+        ast.program = encoder.statements(statements);
+        ast.constants = encoder.constants.toArray();
+        ast.names = encoder.names.toArray(new String[0]);
+        // trim the slack, we are done growing.
+        ast.nodes = Arrays.copyOf(ast.nodes, ast.size * 4);
+        ast.lists = Arrays.copyOf(ast.lists, ast.listsSize);
+        return ast;
+    }
+
+    int program() {
+        return program;
+    }
+
+    int kind(int node) {
+        return nodes[node * 4] & 0xff;
+    }
+
+    int line(int node) {
+        return nodes[node * 4] >>> 8;
+    }
+
+    int a(int node) {
+        return nodes[node * 4 + 1];
+    }
+
+    int b(int node) {
+        return nodes[node * 4 + 2];
+    }
+
+    int c(int node) {
+        return nodes[node * 4 + 3];
+    }
+
+    TokenType operator(int node) {
+        return TYPES[a(node)];
+    }
+
+    Object constant(int index) {
+        return constants[index];
+    }
+
+    String name(int index) {
+        return names[index];
+    }
+
+    int listSize(int list) {
+        return lists[list];
+    }
+
+    int listElement(int list, int i) {
+        return lists[list + 1 + i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // nodes and lists only: constants and names are shared with the source program,
+    // and an object tree holds them too.
+    double bytesPerNode() {
+        if (size == 0) return 0;
+        long bytes = 2L * ARRAY_HEADER_BYTES + (long) nodes.length * Integer.BYTES + (long) lists.length * Integer.BYTES;
+        return (double) bytes / size;
+    }
+
+    private int add(int kind, int line, int a, int b, int c) {
+        if ((size + 1) * 4 > nodes.length) nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        int base = size * 4;
+        nodes[base] = Math.min(line, MAX_LINE) << 8 | kind;
+        nodes[base + 1] = a;
+        nodes[base + 2] = b;
+        nodes[base + 3] = c;
+        return size++;
+    }
+
+    private int list(int[] elements) {
+        if (listsSize + elements.length + 1 > lists.length)
+            lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listsSize + elements.length + 1));
+        int list = listsSize;
+        lists[listsSize++] = elements.length;
+        System.arraycopy(elements, 0, lists, listsSize, elements.length);
+        listsSize += elements.length;
+        return list;
+    }
+
+    // walks the object tree, children first, emitting nodes. every visit returns the
+    // index of the node it emitted.
+    private static class Encoder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+        private final FlatAst ast = new FlatAst();
+        private final Map<Object, Integer> constantIndices = new HashMap<>();
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<String, Integer> nameIndices = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        // lines are not stored in all nodes of the tree, we carry on the last one seen.
+        private int line = 0;
+
+        private int encode(Expr expr) {
+            return expr == null ? -1 : expr.accept(this);
+        }
+
+        private int encode(Stmt stmt) {
+            return stmt == null ? -1 : stmt.accept(this);
+        }
+
+        int statements(List<? extends Stmt> statements) {
+            int[] elements = new int[statements.size()];
+            for (int i = 0; i < elements.length; i++) elements[i] = encode(statements.get(i));
+            return ast.list(elements);
+        }
+
+        private int constant(Object value) {
+            // null can't be a map key, and a java null is a lox nil.
+            Object key = value == null ? Void.class : value;
+            Integer index = constantIndices.get(key);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                constantIndices.put(key, index);
+            }
+            return index;
+        }
+
+        private int name(Token token) {
+            line = token.line();
+            Integer index = nameIndices.get(token.lexeme);
+            if (index == null) {
+                index = names.size();
+                names.add(token.lexeme);
+                nameIndices.put(token.lexeme, index);
+            }
+            return index;
+        }
+
+        private int operator(Token token) {
+            line = token.line();
+            return token.type.ordinal();
+        }
+
+        // -1 for globals, as on the trees.
+        private int distance(Expr expr) {
+            return expr.depth;
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            int value = encode(expr.value);
+            return ast.add(ASSIGN, expr.name.line(), name(expr.name), value, distance(expr));
+        }
+
+        @Override
+        public Integer visitTernaryExpr(Expr.Ternary expr) {
+            int left = encode(expr.left);
+            int middle = encode(expr.middle);
+            int right = encode(expr.right);
+            return ast.add(TERNARY, expr.first.line(), left, middle, right);
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            int left = encode(expr.left);
+            int right = encode(expr.right);
+            return ast.add(BINARY, expr.operator.line(), operator(expr.operator), left, right);
+        }
+
+        @Override
+        public Integer visitSetExpr(Expr.Set expr) {
+            int object = encode(expr.object);
+            int value = encode(expr.value);
+            return ast.add(SET, expr.name.line(), object, name(expr.name), value);
+        }
+
+        @Override
+        public Integer visitSuperExpr(Expr.Super expr) {
+            return ast.add(SUPER, expr.method.line(), name(expr.method), distance(expr), 0);
+        }
+
+        @Override
+        public Integer visitThisExpr(Expr.This expr) {
+            line = expr.keyword.line();
+            return ast.add(THIS, expr.keyword.line(), distance(expr), 0, 0);
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            int right = encode(expr.right);
+            return ast.add(UNARY, expr.operator.line(), operator(expr.operator), right, 0);
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            int callee = encode(expr.callee);
+            int[] arguments = new int[expr.arguments.size()];
+            for (int i = 0; i < arguments.length; i++) arguments[i] = encode(expr.arguments.get(i));
+            return ast.add(CALL, expr.paren.line(), callee, ast.list(arguments), 0);
+        }
+
+        @Override
+        public Integer visitGetExpr(Expr.Get expr) {
+            int object = encode(expr.object);
+            return ast.add(GET, expr.name.line(), object, name(expr.name), 0);
+        }
+
+        @Override
+        public Integer visitAnonFunctionExpr(Expr.AnonFunction expr) {
+            return function(expr, -1);
+        }
+
+        private int function(Expr.AnonFunction function, int name) {
+            int[] parameters = new int[function.params.size()];
+            for (int i = 0; i < parameters.length; i++) parameters[i] = name(function.params.get(i));
+            int params = ast.list(parameters);
+            int body = statements(function.body);
+            return ast.add(FUNCTION, line, params, body, name);
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            int expression = encode(expr.expression);
+            return ast.add(GROUPING, line, expression, 0, 0);
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            return ast.add(LITERAL, line, constant(expr.value), 0, 0);
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            int left = encode(expr.left);
+            int right = encode(expr.right);
+            return ast.add(LOGICAL, expr.operator.line(), operator(expr.operator), left, right);
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            return ast.add(VARIABLE, expr.name.line(), name(expr.name), distance(expr), 0);
+        }
+
+        @Override
+        public Integer visitBlockStmt(Stmt.Block stmt) {
+            return ast.add(BLOCK, line, statements(stmt.statements), 0, 0);
+        }
+
+        @Override
+        public Integer visitClassStmt(Stmt.Class stmt) {
+            int name = name(stmt.name);
+            int superclass = encode(stmt.superclass);
+            int methods = statements(stmt.methods);
+            return ast.add(CLASS, stmt.name.line(), name, superclass, methods);
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.Expression stmt) {
+            int expression = encode(stmt.expression);
+            return ast.add(EXPRESSION, line, expression, 0, 0);
+        }
+
+        @Override
+        public Integer visitFunctionStmt(Stmt.Function stmt) {
+            int name = name(stmt.name);
+            int function = function(stmt.definition, name);
+            return ast.add(DECLARATION, stmt.name.line(), name, function, 0);
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.If stmt) {
+            int condition = encode(stmt.condition);
+            int thenBranch = encode(stmt.thenBranch);
+            int elseBranch = encode(stmt.elseBranch);
+            return ast.add(IF, line, condition, thenBranch, elseBranch);
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.Print stmt) {
+            int expression = encode(stmt.expression);
+            return ast.add(PRINT, line, expression, 0, 0);
+        }
+
+        @Override
+        public Integer visitReturnStmt(Stmt.Return stmt) {
+            int value = encode(stmt.value);
+            return ast.add(RETURN, stmt.keyword.line(), value, 0, 0);
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.While stmt) {
+            int condition = encode(stmt.condition);
+            int body = encode(stmt.body);
+            return ast.add(WHILE, stmt.keyword.line(), condition, body, 0);
+        }
+
+        @Override
+        public Integer visitBreakStmt(Stmt.Break stmt) {
+            return ast.add(BREAK, stmt.keyword.line(), 0, 0, 0);
+        }
+
+        @Override
+        public Integer visitVarStmt(Stmt.Var stmt) {
+            int name = name(stmt.name);
+            int initializer = encode(stmt.initializer);
+            return ast.add(VAR, stmt.name.line(), name, initializer, 0);
+        }
+    }
+}
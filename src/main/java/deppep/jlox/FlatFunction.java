@@ -0,0 +1,90 @@
+package deppep.jlox;
+
+import java.util.Arrays;
+import java.util.List;
+
+// a function of a flat program. it extends `LoxFunction` only so that classes and
+// instances, which are built around it, work unchanged with the flat interpreter:
+// none of the parent's state is used.
+class FlatFunction extends LoxFunction {
+    private final FlatInterpreter interpreter;
+    // the FUNCTION node.
+    private final int node;
+    private final Environment closure;
+    private final boolean isInitializer;
+
+    FlatFunction(FlatInterpreter interpreter, int node, Environment closure, boolean isInitializer) {
+        super(null, null, closure, isInitializer);
+        this.interpreter = interpreter;
+        this.node = node;
+        this.closure = closure;
+        this.isInitializer = isInitializer;
+    }
+
+    @Override
+    FlatFunction bind(LoxInstance instance) {
+        Environment environment = new Environment(closure);
+        environment.define("this", instance);
+        return new FlatFunction(interpreter, node, environment, isInitializer);
+    }
+
+    // the tree interpreter passed by classes is of no use here, we run on our own.
+    @Override
+    public Object call(Interpreter unused, List<Object> arguments) {
+        FlatAst ast = interpreter.ast;
+        Environment environment = new Environment(closure);
+        int params = ast.a(node);
+        for (int i = 0; i < ast.listSize(params); i++) {
+            environment.define(ast.name(ast.listElement(params, i)), arguments.get(i));
+        }
+
+        try {
+            interpreter.executeBlock(ast.b(node), environment);
+        } catch (ReturnException returnValue) {
+            if (isInitializer) return closure.getAt(0, "this");
+            return returnValue.value;
+        }
+        if (isInitializer) return closure.getAt(0, "this");
+        return null;
+    }
+
+    // back to lists: the fixed arity entry points of the parent bind into tree frames.
+    @Override
+    public Object call0(Interpreter unused) {
+        return call(unused, List.of());
+    }
+
+    @Override
+    public Object call1(Interpreter unused, Object a) {
+        return call(unused, Arrays.asList(a));
+    }
+
+    @Override
+    public Object call2(Interpreter unused, Object a, Object b) {
+        return call(unused, Arrays.asList(a, b));
+    }
+
+    @Override
+    public Object call3(Interpreter unused, Object a, Object b, Object c) {
+        return call(unused, Arrays.asList(a, b, c));
+    }
+
+    @Override
+    public Object callN(Interpreter unused, Object[] arguments) {
+        return call(unused, Arrays.asList(arguments));
+    }
+
+    @Override
+    public int arity() {
+        return interpreter.ast.listSize(interpreter.ast.a(node));
+    }
+
+    @Override
+    public String toString() {
+        int name = interpreter.ast.c(node);
+        if (name < 0) {
+            return "<fn anonymous>";
+        }
+        return "<fn " + interpreter.ast.name(name) + ">";
+    }
+}
@@ -0,0 +1,360 @@
+package deppep.jlox;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static deppep.jlox.FlatAst.*;
+
+// walks a `FlatAst` directly. semantics are the tree interpreter's, but rather than
+// visitors we have a switch over node kinds, and rather than fields we have indices.
+// tokens are no more, so the few we need for runtime errors are made up on the spot.
+class FlatInterpreter {
+    final FlatAst ast;
+    final Environment globals = new Environment();
+    private Environment environment = globals;
+    // to whatever `System.out` is at the time, see `Output`.
+    private final Output out = new Output((OutputStream) null);
+
+    FlatInterpreter(FlatAst ast) {
+        this.ast = ast;
+        Interpreter.defineNatives(globals);
+    }
+
+    void interpret() {
+        RuntimeError failure = null;
+        try {
+            int program = ast.program();
+            for (int i = 0; i < ast.listSize(program); i++) {
+                execute(ast.listElement(program, i));
+            }
+        } catch (RuntimeError error) {
+            failure = error;
+        } finally {
+            out.flush();
+        }
+        // after the flush: what was printed before the error comes before it.
+        if (failure != null) Lox.runtimeError(failure);
+    }
+
+    // only for errors, and for the few instance methods which want a token.
+    private Token token(int node, TokenType type, String lexeme) {
+        return new Token(type, lexeme, null, ast.line(node));
+    }
+
+    private Token name(int node, int name) {
+        return token(node, TokenType.IDENTIFIER, ast.name(name));
+    }
+
+    // every case is a method of its own: this keeps `evaluate` small enough to be
+    // inlined in the recursion, which a switch carrying all of the semantics wasn't.
+    Object evaluate(int node) {
+        switch (ast.kind(node)) {
+            case LITERAL:
+                return ast.constant(ast.a(node));
+            case VARIABLE:
+                return lookUpVariable(node, ast.a(node), ast.b(node));
+            case THIS:
+                return environment.getAt(ast.a(node), "this");
+            case GROUPING:
+                return evaluate(ast.a(node));
+            case ASSIGN:
+                return assign(node);
+            case UNARY:
+                return unary(node);
+            case BINARY:
+                return binary(node);
+            case LOGICAL:
+                return logical(node);
+            case TERNARY:
+                return ternary(node);
+            case CALL:
+                return call(node);
+            case GET:
+                return get(node);
+            case SET:
+                return set(node);
+            case SUPER:
+                return superMethod(node);
+            case FUNCTION:
+                return new FlatFunction(this, node, environment, false);
+        }
+
+        throw new IllegalStateException("Not an expression: " + ast.kind(node));
+    }
+
+    private Object assign(int node) {
+        Object value = evaluate(ast.b(node));
+        int distance = ast.c(node);
+        String name = ast.name(ast.a(node));
+        if (distance >= 0) {
+            environment.ancestor(distance).define(name, value);
+        } else if (globals.isDefined(name)) {
+            globals.define(name, value);
+        } else {
+            throw new RuntimeError(name(node, ast.a(node)), "Undefined variable '" + name + "'.");
+        }
+        return value;
+    }
+
+    private Object unary(int node) {
+        Object right = evaluate(ast.b(node));
+        switch (ast.operator(node)) {
+            case BANG:
+                return !Interpreter.isTruthy(right);
+            case MINUS:
+                if (right instanceof Double) return -(double) right;
+                throw new RuntimeError(token(node, TokenType.MINUS, "-"), "Operand must be a number");
+        }
+        // unreachable
+        return null;
+    }
+
+    private Object logical(int node) {
+        Object left = evaluate(ast.b(node));
+        if (ast.operator(node) == TokenType.OR) {
+            if (Interpreter.isTruthy(left)) return left;
+        } else {
+            if (!Interpreter.isTruthy(left)) return left;
+        }
+        return evaluate(ast.c(node));
+    }
+
+    private Object ternary(int node) {
+        if (Interpreter.isTruthy(evaluate(ast.a(node)))) return evaluate(ast.b(node));
+        return evaluate(ast.c(node));
+    }
+
+    private Object get(int node) {
+        Object object = evaluate(ast.a(node));
+        if (object instanceof LoxInstance instance) {
+            return instance.get(name(node, ast.b(node)));
+        }
+        throw new RuntimeError(name(node, ast.b(node)), "Only class instances have properties.");
+    }
+
+    private Object set(int node) {
+        Object object = evaluate(ast.a(node));
+        if (!(object instanceof LoxInstance instance)) {
+            throw new RuntimeError(name(node, ast.b(node)), "Only instances may have fields.");
+        }
+        Object value = evaluate(ast.c(node));
+        instance.set(name(node, ast.b(node)), value);
+        return value;
+    }
+
+    private Object superMethod(int node) {
+        int distance = ast.b(node);
+        LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
+        LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
+        String name = ast.name(ast.a(node));
+        LoxFunction method = superclass.findMethod(name);
+        if (method == null) {
+            throw new RuntimeError(name(node, ast.a(node)), "Undefined superclass property '" + name + "'.");
+        }
+        return method.bind(object);
+    }
+
+    private Object lookUpVariable(int node, int name, int distance) {
+        String lexeme = ast.name(name);
+        Object var;
+        if (distance >= 0) {
+            var = environment.getAt(distance, lexeme);
+        } else if (globals.isDefined(lexeme)) {
+            var = globals.getAt(0, lexeme);
+        } else {
+            throw new RuntimeError(name(node, name), "Undefined variable '" + lexeme + "'.");
+        }
+        if (var == null) {
+            throw new RuntimeError(name(node, name), "Uninitialized variable '" + lexeme + "'.");
+        }
+        return var;
+    }
+
+    private Object binary(int node) {
+        Object left = evaluate(ast.b(node));
+        Object right = evaluate(ast.c(node));
+        TokenType operator = ast.operator(node);
+        switch (operator) {
+            case BANG_EQUAL:
+                return !Interpreter.isEqual(left, right);
+            case EQUAL_EQUAL:
+                return Interpreter.isEqual(left, right);
+            case COMMA:
+                return right;
+            case PLUS:
+                if (left instanceof Double && right instanceof Double) {
+                    return (double) left + (double) right;
+                }
+                if (left instanceof String && right instanceof String) {
+                    return left + (String) right;
+                }
+                if (left instanceof String) {
+                    return left + Interpreter.stringify(right);
+                }
+                if (right instanceof String) {
+                    return Interpreter.stringify(left) + right;
+                }
+                throw new RuntimeError(token(node, operator, "+"), "Operands must be two numbers or two strings.");
+        }
+
+        if (!(left instanceof Double a && right instanceof Double b)) {
+            throw new RuntimeError(token(node, operator, operator.name()), "Operands must be numbers.");
+        }
+        switch (operator) {
+            case GREATER:
+                return a > b;
+            case GREATER_EQUAL:
+                return a >= b;
+            case LESS:
+                return a < b;
+            case LESS_EQUAL:
+                return a <= b;
+            case MINUS:
+                return a - b;
+            case STAR:
+                return a * b;
+            case SLASH:
+                if (b == 0) throw new RuntimeError(token(node, operator, "/"), "Division by zero.");
+                return a / b;
+        }
+
+        // unreachable
+        return null;
+    }
+
+    private Object call(int node) {
+        Object callee = evaluate(ast.a(node));
+
+        int list = ast.b(node);
+        int size = ast.listSize(list);
+        List<Object> arguments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            arguments.add(evaluate(ast.listElement(list, i)));
+        }
+
+        if (!(callee instanceof LoxCallable function)) {
+            throw new RuntimeError(token(node, TokenType.RIGHT_PAREN, ")"), "Can only call functions and classes.");
+        }
+        if (size != function.arity()) {
+            throw new RuntimeError(token(node, TokenType.RIGHT_PAREN, ")"),
+                    "Expected " + function.arity() + " arguments but got " + size + ".");
+        }
+
+        // natives and classes get no tree interpreter, flat functions bring their own.
+        try {
+            return function.call(null, arguments);
+        } catch (NativeFunction.Error error) {
+            throw new RuntimeError(token(node, TokenType.RIGHT_PAREN, ")"), error.getMessage());
+        } catch (StackOverflowError error) {
+            // as in `Interpreter.visitCallExpr`.
+            throw new RuntimeError(token(node, TokenType.RIGHT_PAREN, ")"), "Stack overflow.");
+        }
+    }
+
+    void execute(int node) {
+        switch (ast.kind(node)) {
+            case EXPRESSION:
+                evaluate(ast.a(node));
+                break;
+            case PRINT:
+                out.println(Interpreter.stringify(evaluate(ast.a(node))));
+                break;
+            case VAR:
+                executeVar(node);
+                break;
+            case BLOCK:
+                executeBlock(ast.a(node), new Environment(environment));
+                break;
+            case IF:
+                executeIf(node);
+                break;
+            case WHILE:
+                executeWhile(node);
+                break;
+            case BREAK:
+                throw new BreakException();
+            case RETURN:
+                int value = ast.a(node);
+                throw new ReturnException(value < 0 ? null : evaluate(value));
+            case DECLARATION:
+                environment.define(ast.name(ast.a(node)), new FlatFunction(this, ast.b(node), environment, false));
+                break;
+            case CLASS:
+                executeClass(node);
+                break;
+            default:
+                throw new IllegalStateException("Not a statement: " + ast.kind(node));
+        }
+    }
+
+    private void executeVar(int node) {
+        int initializer = ast.b(node);
+        Object value = initializer < 0 ? null : evaluate(initializer);
+        environment.define(ast.name(ast.a(node)), value);
+    }
+
+    private void executeIf(int node) {
+        if (Interpreter.isTruthy(evaluate(ast.a(node)))) {
+            execute(ast.b(node));
+        } else if (ast.c(node) >= 0) {
+            execute(ast.c(node));
+        }
+    }
+
+    private void executeWhile(int node) {
+        while (Interpreter.isTruthy(evaluate(ast.a(node)))) {
+            try {
+                execute(ast.b(node));
+            } catch (BreakException _) {
+                break;
+            }
+        }
+    }
+
+    private void executeClass(int node) {
+        String name = ast.name(ast.a(node));
+        int superclassNode = ast.b(node);
+        Object superclass = null;
+        if (superclassNode >= 0) {
+            superclass = evaluate(superclassNode);
+            if (!(superclass instanceof LoxClass)) {
+                throw new RuntimeError(name(superclassNode, ast.a(superclassNode)), "Superclass must be a class.");
+            }
+        }
+        environment.define(name, null);
+
+        if (superclassNode >= 0) {
+            environment = new Environment(environment);
+            environment.define("super", superclass);
+        }
+
+        // methods are DECLARATION nodes.
+        Map<String, LoxFunction> methods = new HashMap<>();
+        int list = ast.c(node);
+        for (int i = 0; i < ast.listSize(list); i++) {
+            int method = ast.listElement(list, i);
+            String methodName = ast.name(ast.a(method));
+            methods.put(methodName, new FlatFunction(this, ast.b(method), environment, methodName.equals("init")));
+        }
+        LoxClass klass = new LoxClass(name, (LoxClass) superclass, methods);
+
+        if (superclassNode >= 0)
+            environment = environment.enclosing;
+        environment.define(name, klass);
+    }
+
+    void executeBlock(int statements, Environment environment) {
+        Environment previous = this.environment;
+        try {
+            this.environment = environment;
+            for (int i = 0; i < ast.listSize(statements); i++) {
+                execute(ast.listElement(statements, i));
+            }
+        } finally {
+            this.environment = previous;
+        }
+    }
+}
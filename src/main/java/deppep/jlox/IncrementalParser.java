@@ -0,0 +1,133 @@
+package deppep.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// keeps a program parsed and resolved while its source gets edited, for editors and
+// long running sessions which would otherwise redo the whole front end at each keystroke.
+// we remember where each top-level declaration lies in the source. after an edit we
+// restart scanning at the end of the last declaration before the edit, and parse
+// until we land again on the start of an old declaration past the edit: from there on
+// the text is the same as before, hence the tokens and the trees are too, and can be
+// reused. lines are the exception, as they change past an edit adding or removing
+// some: the tokens of a declaration share a `Token.Shift`, bumped when it's reused.
+// resolving is cheap to make incremental: the resolver only tracks local
+// scopes, so each top-level declaration resolves on its own, and the resolutions of
+// untouched trees stay valid in the interpreter.
+class IncrementalParser {
+    // a top-level declaration lying in source[start, end). `line` is the line at `end`,
+    // `shift` the one its tokens share.
+    private record Declaration(int start, int end, int line, Stmt stmt, Token.Shift shift) {
+        Declaration moved(int offset, int lines) {
+            shift.lines += lines;
+            return new Declaration(start + offset, end + offset, line + lines, stmt, shift);
+        }
+    }
+
+    private final Interpreter interpreter;
+    private String source;
+    private List<Declaration> declarations = new ArrayList<>();
+    private int reparsed = 0;
+
+    IncrementalParser(Interpreter interpreter, String source) {
+        this.interpreter = interpreter;
+        this.source = source;
+        update(0, 0, 1, 0, 0, Integer.MAX_VALUE);
+    }
+
+    String source() {
+        return source;
+    }
+
+    List<Stmt> statements() {
+        List<Stmt> statements = new ArrayList<>(declarations.size());
+        for (Declaration declaration : declarations) {
+            statements.add(declaration.stmt);
+        }
+        return statements;
+    }
+
+    // how many declarations the last update had to parse.
+    int reparsed() {
+        return reparsed;
+    }
+
+    // replaces `length` chars at `offset` with `text`.
+    void edit(int offset, int length, String text) {
+        String removed = source.substring(offset, offset + length);
+        source = source.substring(0, offset) + text + source.substring(offset + length);
+
+        // the edit could touch the declaration ending right where it starts, so we
+        // restart from the end of the one before that: a safe spot for the scanner.
+        int first = firstEndingAt(offset);
+        int from = first == 0 ? 0 : declarations.get(first - 1).end;
+        int line = first == 0 ? 1 : declarations.get(first - 1).line;
+        int lines = countLines(text) - countLines(removed);
+        update(first, from, line, text.length() - length, lines, offset + length);
+    }
+
+    // parses from `from` on, reusing old declarations starting at or after `reuseFrom`
+    // as soon as we get in sync with them. `delta` is how much they moved, in chars,
+    // and `lines` in lines.
+    private void update(int first, int from, int line, int delta, int lines, int reuseFrom) {
+        Scanner.Stream tokens = new Scanner(source).stream(from, line);
+        Parser parser = new Parser(tokens);
+        List<Declaration> parsed = new ArrayList<>();
+        // the next old declaration we could resync with.
+        int next = first;
+        int resync = -1;
+
+        while (!parser.done()) {
+            int start = tokens.peekStart();
+            while (next < declarations.size() && (declarations.get(next).start < reuseFrom
+                    || declarations.get(next).start + delta < start)) next++;
+            if (next < declarations.size() && declarations.get(next).start + delta == start) {
+                resync = next;
+                break;
+            }
+            Token.Shift shift = new Token.Shift();
+            tokens.shift(shift);
+            Stmt stmt = parser.parseDeclaration();
+            parsed.add(new Declaration(start, tokens.previousEnd(), tokens.previousLine(), stmt, shift));
+        }
+
+        List<Declaration> updated = new ArrayList<>(declarations.subList(0, first));
+        updated.addAll(parsed);
+        if (resync >= 0) {
+            for (Declaration declaration : declarations.subList(resync, declarations.size())) {
+                updated.add(declaration.moved(delta, lines));
+            }
+        }
+        declarations = updated;
+        reparsed = parsed.size();
+
+        Resolver resolver = new Resolver(interpreter);
+        for (Declaration declaration : parsed) {
+            // a null statement is a declaration which failed to parse.
+            if (declaration.stmt != null) resolver.resolve(List.of(declaration.stmt));
+        }
+    }
+
+    // index of the first declaration ending at or after `offset`.
+    private int firstEndingAt(int offset) {
+        int low = 0;
+        int high = declarations.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (declarations.get(middle).end < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int countLines(String text) {
+        int lines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') lines++;
+        }
+        return lines;
+    }
+}
@@ -1,6 +1,6 @@
 package deppep.jlox;
 
-import java.util.ArrayList;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,11 +15,52 @@ public class Interpreter implements Expr.Visitor<Object>,
         // to return Void, which is a "boxed void" implementation alike
         // `Int` is for `int`.
         Stmt.Visitor<Void> {
-    final Environment globals = new Environment();
-    private final Map<Expr, Integer> locals = new HashMap<>();
-    private Environment environment = globals;
-
+    final Environment globals;
+    // resolutions are not kept here but on the trees, see `resolve`.
+    private Environment environment;
+    // where `print` goes, buffered. see `Output`.
+    final Output out;
+    // shared with fibers, see `Budget`.
+    final Budget budget;
+    // frames of finished calls, ready for the next ones. see `frame`.
+    private final Environment[] frames = new Environment[FRAMES];
+    private int pooled = 0;
+    private static final int FRAMES = 64;
+    // with `-Djlox.poisonFrames=true` frames are poisoned rather than recycled, so
+    // that any later use fails loudly. for chasing bugs in `EscapeAnalysis`.
+    static final boolean POISON_FRAMES = Boolean.getBoolean("jlox.poisonFrames");
+
+    // prints to whatever `System.out` is at the time.
     Interpreter() {
+        this(new Output((OutputStream) null));
+    }
+
+    Interpreter(Output out) {
+        this.out = out;
+        this.globals = new Environment();
+        this.environment = globals;
+        this.budget = new Budget();
+        defineNatives(globals);
+    }
+
+    // a fiber's interpreter, see `Fiber`. everything is shared with `parent` but the
+    // current environment, which is where a thread is at.
+    private Interpreter(Interpreter parent) {
+        this.out = parent.out;
+        this.globals = parent.globals;
+        this.environment = parent.globals;
+        this.budget = parent.budget;
+    }
+
+    Interpreter fiber() {
+        return new Interpreter(this);
+    }
+
+    // shared with the flat interpreter, which has globals of its own.
+    static void defineNatives(Environment globals) {
+        Fiber.define(globals);
+        Channel.define(globals);
+        Parallel.define(globals);
         // this is an example of a native function
         globals.define("clock", new LoxCallable() {  // crazy java syntax: the value is an anonymous class
             @Override
@@ -34,14 +75,43 @@ public class Interpreter implements Expr.Visitor<Object>,
         });
     }
 
-    void interpret(List<Stmt> statements) {
+    // statements may be parsed as we go, see `LoxContext.run(Reader)`.
+    void interpret(Iterable<Stmt> statements) {
+        budget.start();
         try {
             for (Stmt statement : statements) {
                 execute(statement);
             }
         } catch (RuntimeError error) {
+            // what was printed before the error comes before it.
+            out.flush();
+            Lox.runtimeError(error);
+        } finally {
+            budget.finish();
+            out.flush();
+        }
+    }
+
+    // like `interpret`, but a program ending with an expression statement gives back
+    // its value, as embedders expect. see `LoxScriptEngine`.
+    Object interpretValue(List<Stmt> statements) {
+        budget.start();
+        try {
+            int last = statements.size() - 1;
+            for (int i = 0; i < last; i++) {
+                execute(statements.get(i));
+            }
+            if (last < 0) return null;
+            if (statements.get(last) instanceof Stmt.Expression expression) return evaluate(expression.expression);
+            execute(statements.get(last));
+        } catch (RuntimeError error) {
+            out.flush();
             Lox.runtimeError(error);
+        } finally {
+            budget.finish();
+            out.flush();
         }
+        return null;
     }
 
     // expr interface
@@ -74,14 +144,14 @@ public class Interpreter implements Expr.Visitor<Object>,
         }
 
         Object value = evaluate(expr.value);
-        ((LoxInstance) object).set(expr.name, value);
+        if (((LoxInstance) object).set(expr.name, value)) budget.allocate(Budget.FIELD);
 
         return value;
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
+        int distance = expr.depth;
         LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
         LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
 
@@ -147,16 +217,15 @@ public class Interpreter implements Expr.Visitor<Object>,
                     return (double) left + (double) right;
                 }
 
-                if (left instanceof String && right instanceof String) {
-                    return left + (String) right;
-                }
-
                 // challenge 7.2
-                if (left instanceof String) {
-                    return left + stringify(right);
-                }
-                if (right instanceof String) {
-                    return stringify(left) + right;
+                if (left instanceof String || right instanceof String) {
+                    String first = left instanceof String string ? string : stringify(left);
+                    String second = right instanceof String string ? string : stringify(right);
+                    // accounted before being built: these may get huge. see `Budget`.
+                    if (!budget.allocate(Budget.STRING + first.length() + second.length())) {
+                        throw budget.exhausted(expr.operator);
+                    }
+                    return first + second;
                 }
 
                 throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
@@ -185,24 +254,53 @@ public class Interpreter implements Expr.Visitor<Object>,
     public Object visitCallExpr(Expr.Call expr) {
         Object callee = evaluate(expr.callee);
 
-        List<Object> arguments = new ArrayList<>();
         // another subtletly here: if argument evaluation has side effect on
         // the argument yet to be parsed, the order arguments are evaluated could
         // be visible to the user.
-        for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+        // up to three arguments are kept as they are, and passed to an entry point
+        // for their number (see `LoxCallable`): no list is made for most calls.
+        List<Expr> expressions = expr.arguments;
+        int count = expressions.size();
+        Object a = null, b = null, c = null;
+        Object[] arguments = null;
+        if (count > 3) {
+            arguments = new Object[count];
+            for (int i = 0; i < count; i++) {
+                arguments[i] = evaluate(expressions.get(i));
+            }
+        } else {
+            if (count > 0) a = evaluate(expressions.get(0));
+            if (count > 1) b = evaluate(expressions.get(1));
+            if (count > 2) c = evaluate(expressions.get(2));
         }
 
         if (!(callee instanceof LoxCallable function)) {
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
         // checks function's arity against number of arguments actually passed
-        if (arguments.size() != function.arity()) {
+        int arity = function.arity();
+        if (count != arity) {
             throw new RuntimeError(expr.paren,
-                    "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+                    "Expected " + arity + " arguments but got " + count + ".");
         }
 
-        return function.call(this, arguments);
+        spend(expr.paren);
+        try {
+            return switch (count) {
+                case 0 -> function.call0(this);
+                case 1 -> function.call1(this, a);
+                case 2 -> function.call2(this, a, b);
+                case 3 -> function.call3(this, a, b, c);
+                default -> function.callN(this, arguments);
+            };
+        } catch (NativeFunction.Error error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        } catch (StackOverflowError error) {
+            // recursion too deep for the thread's stack: an error for the script, not
+            // for whoever runs it. the innermost call catches it; if making the error
+            // overflows again, a call further out does.
+            throw new RuntimeError(expr.paren, "Stack overflow.");
+        }
     }
 
     @Override
@@ -217,6 +315,7 @@ public class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public LoxCallable visitAnonFunctionExpr(Expr.AnonFunction expr) {
+        budget.allocate(Budget.FUNCTION);
         return new LoxFunction(null, expr, environment, false);
     }
 
@@ -243,8 +342,8 @@ public class Interpreter implements Expr.Visitor<Object>,
 
     private Object lookUpVariable(Token name, Expr expr) {
         Object var = null;
-        Integer distance = locals.get(expr);
-        if (distance != null) {
+        int distance = expr.depth;
+        if (distance >= 0) {
             var = environment.getAt(distance, name.lexeme);
         } else {
             var = globals.get(name);
@@ -269,20 +368,20 @@ public class Interpreter implements Expr.Visitor<Object>,
     // here we decide what truth value is given to a certain object
     // type. Lox follows ruby in this: null and false are "falsey", they
     // evaluate to false. all the other are "truthy", they evaluate to true.
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean) object;
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) return true;
         if (a == null) return false;
 
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
 
         if (object instanceof Double) {
@@ -296,9 +395,29 @@ public class Interpreter implements Expr.Visitor<Object>,
         return object.toString();
     }
 
-    // could be private, but we have some tests using this method
+    // could be private, but we have some tests using this method.
+    // we don't go through `accept` here: a call to it sees every node type, and the jvm
+    // can't inline it. node classes are final and sealed, so testing for one is a single
+    // comparison, and each branch is a direct call to a visit method the jit can inline.
+    // the most common nodes come first. why not a `switch` over types? on the jdk we have
+    // at hand that's an invokedynamic doing the same tests but slower, twice as slow as
+    // `accept` on call-heavy code. the visitors are still there for the other passes.
     Object evaluate(Expr expr) {
-        return expr.accept(this);
+        if (expr instanceof Expr.Literal literal) return literal.value;
+        if (expr instanceof Expr.Variable variable) return visitVariableExpr(variable);
+        if (expr instanceof Expr.Binary binary) return visitBinaryExpr(binary);
+        if (expr instanceof Expr.Call call) return visitCallExpr(call);
+        if (expr instanceof Expr.Logical logical) return visitLogicalExpr(logical);
+        if (expr instanceof Expr.Assign assign) return visitAssignExpr(assign);
+        if (expr instanceof Expr.Grouping grouping) return evaluate(grouping.expression);
+        if (expr instanceof Expr.Unary unary) return visitUnaryExpr(unary);
+        if (expr instanceof Expr.Get get) return visitGetExpr(get);
+        if (expr instanceof Expr.Set set) return visitSetExpr(set);
+        if (expr instanceof Expr.This thisExpr) return visitThisExpr(thisExpr);
+        if (expr instanceof Expr.Super superExpr) return visitSuperExpr(superExpr);
+        if (expr instanceof Expr.Ternary ternary) return visitTernaryExpr(ternary);
+        if (expr instanceof Expr.AnonFunction function) return visitAnonFunctionExpr(function);
+        throw new IllegalStateException("Unexpected expression " + expr);
     }
 
 
@@ -314,6 +433,7 @@ public class Interpreter implements Expr.Visitor<Object>,
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
         LoxFunction function = new LoxFunction(stmt.name, stmt.definition, environment, false);
+        budget.allocate(Budget.FUNCTION + variable());
         environment.define(stmt.name.lexeme, function);
         return null;
     }
@@ -331,7 +451,7 @@ public class Interpreter implements Expr.Visitor<Object>,
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        out.println(stringify(value));
         return null;
     }
 
@@ -353,6 +473,7 @@ public class Interpreter implements Expr.Visitor<Object>,
         }
 
         // if no initializer, a variable is set to null
+        budget.allocate(variable());
         environment.define(stmt.name.lexeme, value);
         return null;
     }
@@ -360,6 +481,7 @@ public class Interpreter implements Expr.Visitor<Object>,
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
+            spend(stmt.keyword);
             try {
                 execute(stmt.body);
             } catch (BreakException _) {
@@ -369,6 +491,11 @@ public class Interpreter implements Expr.Visitor<Object>,
         return null;
     }
 
+    // a unit of work, at loop iterations and calls. see `Budget`.
+    private void spend(Token token) {
+        if (--budget.fuel < 0 || budget.stop != null) throw budget.exhausted(token);
+    }
+
     // challenge 9.3
     @Override
     public Void visitBreakStmt(Stmt.Break stmt) {
@@ -379,8 +506,8 @@ public class Interpreter implements Expr.Visitor<Object>,
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
 
-        Integer distance = locals.get(expr);
-        if (distance != null) {
+        int distance = expr.depth;
+        if (distance >= 0) {
             environment.assignAt(distance, expr.name, value);
         } else {
             globals.assign(expr.name, value);
@@ -388,17 +515,49 @@ public class Interpreter implements Expr.Visitor<Object>,
         return value;
     }
 
-    // could be private but we have tests using this
+    // could be private but we have tests using this. same as `evaluate`.
     void execute(Stmt stmt) {
-        stmt.accept(this);
+        if (stmt instanceof Stmt.Expression expression) {
+            visitExpressionStmt(expression);
+        } else if (stmt instanceof Stmt.Var var) {
+            visitVarStmt(var);
+        } else if (stmt instanceof Stmt.If ifStmt) {
+            visitIfStmt(ifStmt);
+        } else if (stmt instanceof Stmt.Return returnStmt) {
+            visitReturnStmt(returnStmt);
+        } else if (stmt instanceof Stmt.Block block) {
+            visitBlockStmt(block);
+        } else if (stmt instanceof Stmt.While whileStmt) {
+            visitWhileStmt(whileStmt);
+        } else if (stmt instanceof Stmt.Print print) {
+            visitPrintStmt(print);
+        } else if (stmt instanceof Stmt.Function function) {
+            visitFunctionStmt(function);
+        } else if (stmt instanceof Stmt.Break breakStmt) {
+            visitBreakStmt(breakStmt);
+        } else if (stmt instanceof Stmt.Class classStmt) {
+            visitClassStmt(classStmt);
+        } else {
+            throw new IllegalStateException("Unexpected statement " + stmt);
+        }
     }
 
+    // resolutions are written on the nodes rather than kept in a map of ours: they go
+    // away along with the code, which matters to a repl running for ages, and reading
+    // a field beats a hash lookup at every variable access. a tree resolves the same
+    // in any interpreter, and is resolved before it runs, so sharing trees is fine.
     void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+        expr.depth = depth;
+    }
+
+    // what defining a variable here costs: globals live in a map, locals in slots.
+    private long variable() {
+        return environment == globals ? Budget.GLOBAL : Budget.VARIABLE;
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
+        budget.allocate(Budget.ENVIRONMENT);
         executeBlock(stmt.statements, new Environment(environment));
         return null;
     }
@@ -435,6 +594,38 @@ public class Interpreter implements Expr.Visitor<Object>,
     }
 
 
+    // whether calls to `function` may leak their frame. threads may race to work it
+    // out, and will agree.
+    boolean escapes(Expr.AnonFunction function) {
+        Boolean escapes = function.escapes;
+        if (escapes == null) function.escapes = escapes = EscapeAnalysis.escapes(function);
+        return escapes;
+    }
+
+    // a frame for a call. those of calls which can't leak them (see `escapes`) are
+    // `recycled`: they come from a pool, and go back to it with `recycle` once the
+    // call returns. an interpreter runs on one thread, so does its pool: calls to
+    // leaf functions allocate nothing. a new frame is accounted with the `params` it
+    // will hold.
+    Environment frame(Environment closure, int params, boolean recycled) {
+        if (recycled && pooled > 0) {
+            Environment frame = frames[--pooled];
+            frame.enclosing = closure;
+            return frame;
+        }
+        budget.allocate(Budget.ENVIRONMENT + Budget.VARIABLE * params);
+        return new Environment(closure);
+    }
+
+    void recycle(Environment frame) {
+        if (POISON_FRAMES) {
+            frame.poison();
+        } else if (pooled < FRAMES) {
+            frame.clear();
+            frames[pooled++] = frame;
+        }
+    }
+
     void executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
@@ -3,34 +3,149 @@ package deppep.jlox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
 public class Lox {
-	private static final Interpreter interpreter = new Interpreter();
+	private static final LoxContext context = context();
+	// for errors reported outside of any context, like in tests driving the parser.
 	static boolean hadError = false;
 	static boolean hadRuntimeError = false;
+	// how deep programs may nest, with `-Djlox.maxDepth=<n>`. see `Parser.nest`.
+	static final int MAX_DEPTH = Integer.getInteger("jlox.maxDepth", 2000);
+	// stack needed by a level of nesting, across parser, resolver and interpreter.
+	// measured at under 800 bytes, this leaves some slack.
+	private static final long STACK_PER_LEVEL = 2048;
+	static final long STACK_SIZE = MAX_DEPTH * STACK_PER_LEVEL;
 	
-	public static void main(String[] args) throws IOException {
-		if (args.length > 1) {
-			System.out.println("Usage: jlox [script]");
+	public static void main(String[] args) throws Exception {
+		String mode = args.length > 0 && args[0].startsWith("--") ? args[0] : "";
+		boolean usage = switch (mode) {
+			case "" -> args.length > 1;
+			case "--stdin" -> args.length != 1;
+			case "--batch" -> args.length < 2;
+			case "--serve" -> args.length != 2;
+			case "--connect" -> args.length != 3;
+			default -> true;
+		};
+		if (usage) {
+			System.out.println("Usage: jlox [script]\n" +
+					"       jlox --stdin\n" +
+					"       jlox --batch script [input ...]\n" +
+					"       jlox --serve socket\n" +
+					"       jlox --connect socket script");
 			System.exit(64);
-		} else if (args.length == 1) {
-			runFile(args[0]);
-		} else {
-			runPrompt();
+		}
+		// see `LoxDaemon`. the client has nothing to run here.
+		if (mode.equals("--connect")) {
+			System.exit(LoxDaemon.connect(Paths.get(args[1]), args[2]));
+		}
+		if (mode.equals("--serve")) {
+			LoxDaemon.serve(Paths.get(args[1]));
+			return;
+		}
+		boolean batch = mode.equals("--batch");
+		// with no script, a program coming from a pipe or a file is streamed rather
+		// than fed to the repl, one char at a time and with prompts in the output.
+		// java can't tell whether stdin alone is a terminal, only whether we talk to
+		// one at all: `--stdin` forces streaming.
+		boolean stream = mode.equals("--stdin")
+				|| (args.length == 0 && (System.console() == null || !System.console().isTerminal()));
+
+		// the default stack won't hold `MAX_DEPTH` levels of nesting: we run on a
+		// thread of our own, with a stack sized to match.
+		Throwable[] failure = new Throwable[1];
+		Thread thread = new Thread(null, () -> {
+			try {
+				if (batch) {
+					runBatch(args[1], Arrays.copyOfRange(args, 2, args.length));
+				} else if (stream) {
+					runStream();
+				} else if (args.length == 1) {
+					runFile(args[0]);
+				} else {
+					runPrompt();
+				}
+			} catch (Throwable error) {
+				// anything going wrong over there is rethrown here, or we would exit with 0.
+				failure[0] = error;
+			}
+		}, "jlox", STACK_SIZE);
+		thread.start();
+		thread.join();
+		if (failure[0] instanceof Error error) throw error;
+		if (failure[0] != null) throw (Exception) failure[0];
+	}
+
+	// with `-Djlox.out=<file>` printed output goes straight to a file, through a
+	// channel rather than a stream. diagnostics still go to stderr.
+	private static LoxContext context() {
+		String path = System.getProperty("jlox.out");
+		if (path == null) return new LoxContext();
+		try {
+			FileChannel channel = FileChannel.open(Paths.get(path),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			return new LoxContext(channel, System.err);
+		} catch (IOException error) {
+			throw new UncheckedIOException(error);
 		}
 	}
 
 	// runs interpreter over a source file wrapper
 	private static void runFile(String path) throws IOException {
-		byte[] bytes = Files.readAllBytes(Paths.get(path));
-		run(new String(bytes, Charset.defaultCharset()), false);
-		if (hadError) System.exit(65);
-		if (hadRuntimeError) System.exit(70);
+		// the file is mapped and scanned in place, rather than read and decoded to a string.
+		ByteSource source = ByteSource.map(Paths.get(path));
+		// with `-Djlox.cache=<dir>` parsed and resolved programs are cached on disk.
+		String cache = System.getProperty("jlox.cache");
+		if (cache != null) {
+			runCached(source, new AstCache(Paths.get(cache)));
+		} else {
+			context.run(source, false);
+		}
+		if (context.hadError()) System.exit(65);
+		if (context.hadRuntimeError()) System.exit(70);
+	}
+
+	// runs the program on stdin as it comes, see `LoxContext.run(Reader)`.
+	private static void runStream() throws IOException {
+		int status = context.run(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		if (status != 0) System.exit(status);
+	}
+
+	// runs a script once per input, many at a time, with `-Djlox.threads=<n>` threads.
+	// outputs are written in the order of inputs, timings go to stderr.
+	private static void runBatch(String script, String[] inputs) throws IOException, InterruptedException {
+		List<Stmt> program = context.parse(ByteSource.map(Paths.get(script)), false);
+		if (program == null) System.exit(65);
+
+		int threads = Integer.getInteger("jlox.threads", Runtime.getRuntime().availableProcessors());
+		List<Path> paths = new ArrayList<>();
+		for (String input : inputs) paths.add(Paths.get(input));
+
+		long start = System.nanoTime();
+		List<BatchRunner.Run> runs = new BatchRunner(program, threads).run(paths);
+		long nanos = System.nanoTime() - start;
+
+		boolean failed = false;
+		for (BatchRunner.Run run : runs) {
+			// like `head` does with many files.
+			System.out.println("==> " + run.input() + " <==");
+			System.out.print(run.out());
+			System.err.print(run.err());
+			System.err.printf("[batch] %s: %.3f ms%n", run.input(), run.nanos() / 1e6);
+			failed |= run.status() != 0;
+		}
+		System.err.printf("[batch] %d runs in %.3f ms on %d threads, %.1f runs/s%n",
+				runs.size(), nanos / 1e6, threads, runs.size() / (nanos / 1e9));
+		if (failed) System.exit(70);
 	}
 
 	// REPL
@@ -56,34 +171,26 @@ public class Lox {
 				}
 				line.append((char) character);
 			}
-			run(line.toString(), true);
-			hadError = false;
+			context.run(line.toString(), true);
+			context.clearError();
 		}
 	}
 
-	// run core function
-	private static void run(String source, boolean repl) {
-		Scanner scanner = new Scanner(source);
-		List<Token> tokens = scanner.scanTokens();
-
-		Parser parser = new Parser(tokens);
-		List<Stmt> statements = parser.parse();
-
-		// challenge 8.1
-		// print expression values to std out when in REPL
-		if (repl) {
-			for (int i = 0; i < statements.size(); i++)
-				if (statements.get(i) instanceof Stmt.Expression)
-					statements.set(i, new Stmt.Print(((Stmt.Expression) statements.get(i)).expression));
+	private static void runCached(ByteSource source, AstCache cache) throws IOException {
+		String key = AstCache.key(source);
+		List<Stmt> statements = cache.load(key);
+		if (statements == null) {
+			statements = context.parse(source, false);
+			if (statements == null) return;
+			// the cache is only there to save time: a directory we can't write to, or a
+			// full disk, is no reason not to run the script.
+			try {
+				cache.store(key, statements);
+			} catch (IOException error) {
+				System.err.println("[cache] Can't store the parsed program: " + error.getMessage());
+			}
 		}
-
-		// stop if there was a syntax error
-		if (hadError) return;
-		Resolver resolver = new Resolver(interpreter);
-		resolver.resolve(statements);
-		// stop if there was a resolver error
-		if (hadError) return;
-		interpreter.interpret(statements);
+		context.interpret(statements);
 	}
 
 	static void error(int line, String message) {
@@ -92,19 +199,30 @@ public class Lox {
 
 	static void error(Token token, String message) {
 		if (token.type == TokenType.EOF) {
-			report(token.line, "at end", message);
+			report(token.line(), "at end", message);
 			
 		} else {
-			report(token.line, "at '" + token.lexeme + "'", message);
+			report(token.line(), "at '" + token.lexeme + "'", message);
 		}
 	}
 
+	// errors go to the context running on this thread, if there's one.
 	static void runtimeError(RuntimeError error) {
-		System.err.println("[line " + error.token.line + "] " + error.getMessage());
+		LoxContext current = LoxContext.current();
+		if (current != null) {
+			current.runtimeError(error);
+			return;
+		}
+		System.err.println("[line " + error.token.line() + "] " + error.getMessage());
 		hadRuntimeError = true;
 	}
 
 	private static void report(int line, String where, String message) {
+		LoxContext current = LoxContext.current();
+		if (current != null) {
+			current.report(line, where, message);
+			return;
+		}
 		System.err.println(
 			"[line " + line + "] Error " + where + ": " + message
 			);
@@ -3,9 +3,33 @@
  */
 package deppep.jlox;
 
+import java.util.Arrays;
 import java.util.List;
 
 interface LoxCallable {
     int arity();
     Object call(Interpreter interpreter, List<Object> arguments);
+
+    // entry points for calls with a known number of arguments, which the interpreter
+    // uses so that no list is built for them. by default they make one and go through
+    // `call`: callables which care, like `LoxFunction`, take their arguments as they are.
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, List.of());
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, Arrays.asList(a));
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, Arrays.asList(a, b));
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, Arrays.asList(a, b, c));
+    }
+
+    default Object callN(Interpreter interpreter, Object[] arguments) {
+        return call(interpreter, Arrays.asList(arguments));
+    }
 }
@@ -7,11 +7,15 @@ public class LoxClass implements LoxCallable {
     final String name;
     final LoxClass superclass;
     private final Map<String, LoxFunction> methods;
+    // methods are set for good once the class is made, and so is `init`: looked up
+    // once rather than on every instantiation and arity check.
+    private final LoxFunction initializer;
 
     LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
         this.name = name;
         this.superclass = superclass;
         this.methods = methods;
+        this.initializer = findMethod("init");
     }
 
     LoxFunction findMethod(String name) {
@@ -31,8 +35,9 @@ public class LoxClass implements LoxCallable {
     // python like, e.g.: `class Bagel {}; Bagel()`
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
+        // the flat interpreter has no budget.
+        if (interpreter != null) interpreter.budget.allocate(Budget.INSTANCE);
         LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
         if (initializer != null) {
             initializer.bind(instance).call(interpreter, arguments);
         }
@@ -41,7 +46,6 @@ public class LoxClass implements LoxCallable {
 
     @Override
     public int arity() {
-        LoxFunction initializer = findMethod("init");
         if (initializer == null) return 0;
         return initializer.arity();
     }
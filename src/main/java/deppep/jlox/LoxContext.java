@@ -0,0 +1,232 @@
+package deppep.jlox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+
+// an interpreter session of its own: globals, error state, and where output goes.
+// `Lox` is one of these over stdout and stderr. nothing is shared between contexts,
+// so different contexts can run on different threads at the same time. a context
+// is not meant to be used by more than one thread at once, though.
+//
+// the scanner, parser and resolver report errors with static calls to `Lox.error`:
+// these end up to the context running on the calling thread, see `current`.
+public class LoxContext {
+    private static final ThreadLocal<LoxContext> CURRENT = new ThreadLocal<>();
+
+    private final Interpreter interpreter;
+    private final PrintStream err;
+    private boolean hadError = false;
+    private boolean hadRuntimeError = false;
+
+    public LoxContext() {
+        this(System.out, System.err);
+    }
+
+    public LoxContext(PrintStream out, PrintStream err) {
+        this.err = err;
+        this.interpreter = new Interpreter(new Output(out));
+    }
+
+    // printed output goes straight to `out`, see `Output`.
+    public LoxContext(FileChannel out, PrintStream err) {
+        this.err = err;
+        this.interpreter = new Interpreter(new Output(out));
+    }
+
+    // null when we are not running in any context.
+    static LoxContext current() {
+        return CURRENT.get();
+    }
+
+    // runs `source` and returns the same exit status as the command line would:
+    // 65 on syntax errors, 70 on runtime errors, 0 otherwise.
+    public int run(CharSequence source) {
+        hadError = false;
+        hadRuntimeError = false;
+        run(source, false);
+        if (hadError) return 65;
+        if (hadRuntimeError) return 70;
+        return 0;
+    }
+
+    // runs a program as it's read from `input`, e.g. piped into stdin: statements run
+    // as soon as they are complete, and memory doesn't grow with the input. output is
+    // flushed whenever we wait for more input. returns the same exit status as `run`,
+    // but statements before a syntax error will have run.
+    public int run(Reader input) throws IOException {
+        hadError = false;
+        hadRuntimeError = false;
+        LoxContext previous = enter();
+        try {
+            ReaderSource source = new ReaderSource(input, interpreter.out::flush);
+            Parser parser = new Parser(new Scanner(source).stream());
+            Resolver resolver = new Resolver(interpreter);
+            interpreter.interpret(() -> new Iterator<>() {
+                private Stmt next;
+
+                @Override
+                public boolean hasNext() {
+                    // only past the statement before: it may be waiting on input.
+                    if (next == null && !hadError && !parser.done()) {
+                        Stmt stmt = parser.parseDeclaration();
+                        if (!hadError) resolver.resolve(List.of(stmt));
+                        if (!hadError) next = stmt;
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public Stmt next() {
+                    Stmt stmt = next;
+                    next = null;
+                    return stmt;
+                }
+            });
+            // after a syntax error nothing more runs, but we go on to report the others.
+            if (hadError) {
+                while (!parser.done()) parser.parseDeclaration();
+            }
+        } catch (UncheckedIOException error) {
+            throw error.getCause();
+        } finally {
+            CURRENT.set(previous);
+        }
+        if (hadError) return 65;
+        if (hadRuntimeError) return 70;
+        return 0;
+    }
+
+    // budgets for scripts we don't trust, see `Budget`. every run starts with all of
+    // its fuel and memory, and may take up to `timeout`: past these it stops with a
+    // runtime error.
+    public void limitFuel(long fuel) {
+        interpreter.budget.limit(fuel);
+    }
+
+    public void limitTime(Duration timeout) {
+        interpreter.budget.timeout(timeout);
+    }
+
+    public void limitMemory(long bytes) {
+        interpreter.budget.quota(bytes);
+    }
+
+    // roughly the bytes allocated by the run going on, or the last one. may be read
+    // from any thread, e.g. for dashboards.
+    public long allocated() {
+        return interpreter.budget.allocated;
+    }
+
+    // stops the run going on, from any thread.
+    public void interrupt() {
+        interpreter.budget.stop = "Interrupted.";
+    }
+
+    public boolean hadError() {
+        return hadError;
+    }
+
+    public boolean hadRuntimeError() {
+        return hadRuntimeError;
+    }
+
+    // for the repl, errors are forgotten after every line.
+    void clearError() {
+        hadError = false;
+    }
+
+    Interpreter interpreter() {
+        return interpreter;
+    }
+
+    void run(CharSequence source, boolean repl) {
+        LoxContext previous = enter();
+        try {
+            List<Stmt> statements = parse(source, repl);
+            if (statements == null) return;
+            interpreter.interpret(statements);
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    // returns the exit status, like `run`.
+    int interpret(List<Stmt> statements) {
+        hadRuntimeError = false;
+        LoxContext previous = enter();
+        try {
+            interpreter.interpret(statements);
+        } finally {
+            CURRENT.set(previous);
+        }
+        return hadRuntimeError ? 70 : 0;
+    }
+
+    // like `interpret`, returning the value of a trailing expression statement. check
+    // `hadRuntimeError` for errors.
+    Object interpretValue(List<Stmt> statements) {
+        hadRuntimeError = false;
+        LoxContext previous = enter();
+        try {
+            return interpreter.interpretValue(statements);
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    // the front end: returns the parsed and resolved program, or null on errors.
+    List<Stmt> parse(CharSequence source, boolean repl) {
+        LoxContext previous = enter();
+        try {
+            // the parser pulls tokens from the scanner as it goes, see `Scanner.stream`.
+            Scanner scanner = new Scanner(source);
+            Parser parser = new Parser(scanner.stream());
+            List<Stmt> statements = parser.parse();
+
+            // challenge 8.1
+            // print expression values to std out when in REPL
+            if (repl) {
+                for (int i = 0; i < statements.size(); i++)
+                    if (statements.get(i) instanceof Stmt.Expression)
+                        statements.set(i, new Stmt.Print(((Stmt.Expression) statements.get(i)).expression));
+            }
+
+            // stop if there was a syntax error
+            if (hadError) return null;
+            Resolver resolver = new Resolver(interpreter);
+            resolver.resolve(statements);
+            // stop if there was a resolver error
+            if (hadError) return null;
+            return statements;
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    // contexts may nest on a thread, e.g. a native running a script of its own:
+    // callers put the previous one back when they are done.
+    private LoxContext enter() {
+        LoxContext previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    // output still buffered, e.g. by fibers, goes out before errors: see `Output`.
+    void report(int line, String where, String message) {
+        interpreter.out.flush();
+        err.println("[line " + line + "] Error " + where + ": " + message);
+        hadError = true;
+    }
+
+    void runtimeError(RuntimeError error) {
+        interpreter.out.flush();
+        err.println("[line " + error.token.line() + "] " + error.getMessage());
+        hadRuntimeError = true;
+    }
+}
@@ -0,0 +1,151 @@
+package deppep.jlox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// a long running jlox serving scripts over a unix-domain socket. short scripts spend
+// most of their time starting and warming up a jvm: here they run in one which is
+// already warm, with the interpreter jit-compiled by the runs which came before.
+// every request runs in a fresh context, on a thread of its own.
+//
+// the protocol, integers being big endian:
+//   request:  a byte, FILE or SOURCE, an int length, and as many bytes of utf-8 text:
+//             the absolute path of a script, or the source itself.
+//   response: frames, each a byte, OUT, ERR or EXIT, followed by an int length and
+//             as many bytes for OUT and ERR, by an int exit status for EXIT. output is
+//             sent as it's flushed (see `Output`), and EXIT comes last. statuses are
+//             as in `Lox`, plus 66 for scripts which can't be read.
+class LoxDaemon {
+    static final byte FILE = 1, SOURCE = 2;
+    static final byte OUT = 1, ERR = 2, EXIT = 3;
+    // longer requests are refused, and so are negative lengths, rather than trusted
+    // with a buffer.
+    static final int MAX_REQUEST = 1 << 28;
+
+    static void serve(Path socket) throws IOException {
+        // a socket file left over by a daemon which didn't clean up.
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            socket.toFile().deleteOnExit();
+            while (true) {
+                SocketChannel client = server.accept();
+                // same stack as the main thread, see `Lox.main`.
+                new Thread(null, () -> handle(client), "jlox-daemon", Lox.STACK_SIZE).start();
+            }
+        }
+    }
+
+    private static void handle(SocketChannel channel) {
+        try (channel;
+             DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            int status;
+            try {
+                status = request(in, out);
+            } catch (RuntimeException | Error error) {
+                // a script blowing the stack, a file too large to map: the client still
+                // gets its exit status, and the daemon goes on serving.
+                frames(out, ERR).println("Internal error: " + error + ".");
+                status = 70;
+            }
+
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(status);
+                out.flush();
+            }
+        } catch (IOException error) {
+            // the client is gone, there's no one left to tell.
+        }
+    }
+
+    // reads a request and runs it, returning its exit status.
+    private static int request(DataInputStream in, DataOutputStream out) throws IOException {
+        byte kind = in.readByte();
+        int length = in.readInt();
+        if ((kind != FILE && kind != SOURCE) || length < 0 || length > MAX_REQUEST) {
+            frames(out, ERR).println("Bad request.");
+            return 65;
+        }
+        byte[] bytes = in.readNBytes(length);
+        // the client went away halfway through: there is nothing to run.
+        if (bytes.length < length) throw new EOFException();
+        String payload = new String(bytes, StandardCharsets.UTF_8);
+
+        LoxContext context = new LoxContext(frames(out, OUT), frames(out, ERR));
+        if (kind == SOURCE) return context.run(payload);
+        ByteSource source;
+        try {
+            source = ByteSource.map(Paths.get(payload));
+        } catch (IOException error) {
+            frames(out, ERR).println("Can't read " + payload + ".");
+            return 66;
+        }
+        return context.run(source);
+    }
+
+    // a stream writing frames of kind `stream`. interleaved with those of the other
+    // stream, hence the lock.
+    private static PrintStream frames(DataOutputStream out, byte stream) {
+        return new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                synchronized (out) {
+                    out.writeByte(stream);
+                    out.writeInt(length);
+                    out.write(bytes, offset, length);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                synchronized (out) {
+                    out.flush();
+                }
+            }
+        }, true, StandardCharsets.UTF_8);
+    }
+
+    // the client: runs `script` on the daemon at `socket`, copies its output to ours,
+    // and returns its exit status.
+    static int connect(Path socket, String script) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+             DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            byte[] path = Paths.get(script).toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+            out.writeByte(FILE);
+            out.writeInt(path.length);
+            out.write(path);
+            out.flush();
+
+            while (true) {
+                byte frame = in.readByte();
+                if (frame == EXIT) return in.readInt();
+                byte[] data = in.readNBytes(in.readInt());
+                PrintStream stream = frame == OUT ? System.out : System.err;
+                stream.write(data);
+                stream.flush();
+            }
+        }
+    }
+}
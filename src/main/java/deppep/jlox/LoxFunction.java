@@ -8,6 +8,8 @@ class LoxFunction implements LoxCallable {
     private final Expr.AnonFunction definition;
     private final Environment closure;
     private final boolean isInitializer;
+    // whether calls may leak their frame, looked up on the first one.
+    private Boolean escapes;
 
     LoxFunction(Token name, Expr.AnonFunction definition, Environment closure, boolean isInitializer) {
         this.isInitializer = isInitializer;
@@ -29,12 +31,60 @@ class LoxFunction implements LoxCallable {
         // this enables recursion, which otherwise would not be possible.
         // functions also 'encapsulate' its parameters meaning that these are not visible
         // anywhere else in the code.
-        Environment environment = new Environment(closure);
+        Environment environment = frame(interpreter);
         // we walk the definition, binding arguments (values) to parameters (lexeme, symbols)
         for (int i=0; i < definition.params.size(); i++) {
             environment.define(definition.params.get(i).lexeme, arguments.get(i));
         }
+        return run(interpreter, environment);
+    }
+
+    // the fixed arity entry points bind arguments straight into the frame, see `LoxCallable`.
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return run(interpreter, frame(interpreter));
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        Environment environment = frame(interpreter);
+        environment.define(definition.params.get(0).lexeme, a);
+        return run(interpreter, environment);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        Environment environment = frame(interpreter);
+        environment.define(definition.params.get(0).lexeme, a);
+        environment.define(definition.params.get(1).lexeme, b);
+        return run(interpreter, environment);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        Environment environment = frame(interpreter);
+        environment.define(definition.params.get(0).lexeme, a);
+        environment.define(definition.params.get(1).lexeme, b);
+        environment.define(definition.params.get(2).lexeme, c);
+        return run(interpreter, environment);
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object[] arguments) {
+        Environment environment = frame(interpreter);
+        for (int i = 0; i < arguments.length; i++) {
+            environment.define(definition.params.get(i).lexeme, arguments[i]);
+        }
+        return run(interpreter, environment);
+    }
+
+    // frames which can't outlive the call are recycled, see `Interpreter.frame`.
+    private Environment frame(Interpreter interpreter) {
+        if (escapes == null) escapes = interpreter.escapes(definition);
+        return interpreter.frame(closure, definition.params.size(), !escapes);
+    }
 
+    private Object run(Interpreter interpreter, Environment environment) {
         // return statement are implemented as exceptions (as we do with break)
         try {
             // `executeBlock` will set the interpreter's environment to the function's one
@@ -43,6 +93,8 @@ class LoxFunction implements LoxCallable {
         } catch (ReturnException returnValue) {
             if (isInitializer) return closure.getAt(0, "this");
             return returnValue.value;
+        } finally {
+            if (!escapes) interpreter.recycle(environment);
         }
         // just before returning, executeBlock will reset the interpreter environment to
         // the one of the callee, the function environment being discarded
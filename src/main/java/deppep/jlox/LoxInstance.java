@@ -1,19 +1,24 @@
 package deppep.jlox;
 
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 class LoxInstance {
+    // fields may be read and written by many threads at once, see `Parallel`: each
+    // get and set is atomic. concurrent maps don't hold nulls, hence `NIL`.
+    private static final Object NIL = new Object();
+
     private LoxClass klass;
-    private Map<String, Object> fields = new HashMap<>();
+    private Map<String, Object> fields = new ConcurrentHashMap<>();
 
     LoxInstance(LoxClass klass) {
         this.klass = klass;
     }
 
     Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        Object value = fields.get(name.lexeme);
+        if (value != null) {
+            return value == NIL ? null : value;
         }
 
         // the fact that method lookup comes after field lookup means that
@@ -24,8 +29,9 @@ class LoxInstance {
         throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
     }
 
-    void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+    // true for a new field.
+    boolean set(Token name, Object value) {
+        return fields.put(name.lexeme, value == null ? NIL : value) == null;
     }
 
     @Override
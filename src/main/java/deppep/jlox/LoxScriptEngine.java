@@ -0,0 +1,222 @@
+package deppep.jlox;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// a `javax.script` engine, see `LoxScriptEngineFactory`. scripts are parsed and
+// resolved once, by `compile`, and can then be run many times. `eval` on a string
+// keeps the last few compiled scripts around, by source.
+//
+// every run starts from fresh globals: bindings of the global scope, then of the
+// engine scope, are defined as globals, numbers as lox numbers. afterwards the
+// globals a script defined or changed are put in the engine scope, if they are plain
+// values: numbers, strings, booleans and nil. functions, classes and instances stay
+// behind, as they hold on to the globals of the session which ran them, and would
+// run against those if passed to another script. a script ending with an expression
+// returns its value, whatever it is. `print` goes to the context's writer, errors
+// are thrown as `ScriptException`s.
+//
+// each compiled script keeps a pool of sessions, contexts ready to run it whose
+// globals are put back as they were after every run. engines share no state: errors
+// go to the context running on the thread, see `LoxContext`.
+class LoxScriptEngine extends AbstractScriptEngine implements Compilable {
+    private static final int CACHED_SCRIPTS = 64;
+
+    private final ScriptEngineFactory factory;
+    private final Map<String, Compiled> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Compiled> eldest) {
+            return size() > CACHED_SCRIPTS;
+        }
+    };
+
+    LoxScriptEngine(ScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        Compiled compiled;
+        synchronized (cache) {
+            compiled = cache.get(script);
+        }
+        if (compiled == null) {
+            compiled = compile(script);
+            synchronized (cache) {
+                cache.put(script, compiled);
+            }
+        }
+        return compiled.eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public Compiled compile(String script) throws ScriptException {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        LoxContext front = new LoxContext(System.out, new PrintStream(errors, true, StandardCharsets.UTF_8));
+        List<Stmt> program = front.parse(script, false);
+        if (program == null) throw new ScriptException(errors.toString(StandardCharsets.UTF_8).strip());
+        return new Compiled(program);
+    }
+
+    @Override
+    public CompiledScript compile(Reader reader) throws ScriptException {
+        return compile(read(reader));
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringBuilder script = new StringBuilder();
+        char[] buffer = new char[8192];
+        try {
+            for (int read; (read = reader.read(buffer)) != -1; ) {
+                script.append(buffer, 0, read);
+            }
+        } catch (IOException error) {
+            throw new ScriptException(error);
+        }
+        return script.toString();
+    }
+
+    class Compiled extends CompiledScript {
+        // resolved by `compile`: sessions share the trees, resolutions and all.
+        private final List<Stmt> program;
+        private final Queue<Session> pool = new ConcurrentLinkedQueue<>();
+
+        private Compiled(List<Stmt> program) {
+            this.program = program;
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            Session session = pool.poll();
+            if (session == null) session = new Session();
+            Environment globals = session.context.interpreter().globals;
+            try {
+                session.out.target = context.getWriter();
+                // what we put in, to tell what the script changed.
+                Map<String, Object> defined = new HashMap<>();
+                define(globals, context.getBindings(ScriptContext.GLOBAL_SCOPE), defined);
+                define(globals, context.getBindings(ScriptContext.ENGINE_SCOPE), defined);
+
+                Object value = session.context.interpretValue(program);
+                try {
+                    session.out.flush();
+                } catch (IOException error) {
+                    throw new ScriptException(error);
+                }
+                if (session.context.hadRuntimeError()) {
+                    throw new ScriptException(session.errors.toString(StandardCharsets.UTF_8).strip());
+                }
+
+                Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+                for (Map.Entry<String, Object> global : globals.snapshot().entrySet()) {
+                    String name = global.getKey();
+                    Object after = global.getValue();
+                    Map<String, Object> before = defined.containsKey(name) ? defined : session.natives;
+                    boolean changed = !before.containsKey(name) || before.get(name) != after;
+                    if (changed && isPlain(after)) bindings.put(name, after);
+                }
+                return value;
+            } finally {
+                session.out.target = null;
+                session.errors.reset();
+                globals.restore(session.natives);
+                pool.offer(session);
+            }
+        }
+
+        private static void define(Environment globals, Bindings bindings, Map<String, Object> defined) {
+            if (bindings == null) return;
+            for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+                Object value = binding.getValue();
+                if (value instanceof Number number) value = number.doubleValue();
+                globals.define(binding.getKey(), value);
+                defined.put(binding.getKey(), value);
+            }
+        }
+
+        private static boolean isPlain(Object value) {
+            return value == null || value instanceof Double || value instanceof String || value instanceof Boolean;
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return LoxScriptEngine.this;
+        }
+    }
+
+    // a context ready to run a compiled script, with its natives aside to put back.
+    private static class Session {
+        final Sink out = new Sink();
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        final LoxContext context;
+        final Map<String, Object> natives;
+
+        Session() {
+            context = new LoxContext(
+                    new PrintStream(out, true, StandardCharsets.UTF_8),
+                    new PrintStream(errors, true, StandardCharsets.UTF_8));
+            natives = context.interpreter().globals.snapshot();
+        }
+    }
+
+    // bytes printed by the interpreter, to the writer of the script context at the
+    // time. decoded on flush, which auto flushing streams do on every `println`.
+    private static class Sink extends OutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private Writer target;
+
+        @Override
+        public void write(int b) {
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            buffer.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (target != null && buffer.size() > 0) {
+                target.write(buffer.toString(StandardCharsets.UTF_8));
+                target.flush();
+            }
+            buffer.reset();
+        }
+    }
+}
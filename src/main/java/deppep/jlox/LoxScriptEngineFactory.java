@@ -0,0 +1,88 @@
+package deppep.jlox;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.List;
+
+// lox for `javax.script`, found by `ScriptEngineManager` through the service file
+// in `META-INF/services`:
+//   ScriptEngine engine = new ScriptEngineManager().getEngineByName("lox");
+//   engine.put("n", 20);
+//   engine.eval("n * 2;"); // 40.0
+// see `LoxScriptEngine`.
+public class LoxScriptEngineFactory implements ScriptEngineFactory {
+    @Override
+    public String getEngineName() {
+        return "jlox";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of("lox");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of("text/x-lox");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return List.of("lox", "jlox");
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "lox";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        return switch (key) {
+            case ScriptEngine.ENGINE -> getEngineName();
+            case ScriptEngine.ENGINE_VERSION -> getEngineVersion();
+            case ScriptEngine.NAME -> getNames().get(0);
+            case ScriptEngine.LANGUAGE -> getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION -> getLanguageVersion();
+            // scripts may run on many threads at once, each in globals of its own.
+            // bindings are shared, though.
+            case "THREADING" -> "MULTITHREADED";
+            default -> null;
+        };
+    }
+
+    @Override
+    public String getMethodCallSyntax(String object, String method, String... arguments) {
+        return object + "." + method + "(" + String.join(", ", arguments) + ")";
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        // no escapes in lox strings.
+        return "print \"" + toDisplay + "\";";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        StringBuilder program = new StringBuilder();
+        for (String statement : statements) {
+            program.append(statement).append(";\n");
+        }
+        return program.toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new LoxScriptEngine(this);
+    }
+}
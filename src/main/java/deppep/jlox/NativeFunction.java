@@ -0,0 +1,43 @@
+package deppep.jlox;
+
+import java.util.List;
+
+// a function implemented in java, like `clock`. natives know nothing of the call site,
+// so they fail with a `NativeFunction.Error`, which the interpreter turns into a
+// runtime error at the closing paren of the call.
+class NativeFunction implements LoxCallable {
+    interface Body {
+        Object call(Interpreter interpreter, List<Object> arguments);
+    }
+
+    static class Error extends RuntimeException {
+        Error(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private final String name;
+    private final int arity;
+    private final Body body;
+
+    NativeFunction(String name, int arity, Body body) {
+        this.name = name;
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return body.call(interpreter, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn " + name + ">";
+    }
+}
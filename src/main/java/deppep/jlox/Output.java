@@ -0,0 +1,91 @@
+package deppep.jlox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// where `print` goes. `PrintStream.println` takes a lock and, on stdout, flushes
+// every line: a script printing millions of lines spends its time in write calls.
+// here lines are encoded to utf-8 in a buffer of our own, written out when it fills
+// and at flush points: when a run ends, and before anything goes to stderr, so that
+// output and diagnostics keep their order. see `Interpreter.interpret`.
+//
+// the target is a stream, or a file channel with no stream in between. fibers and
+// parallel workers print through the same output, hence the lock. a fiber printing
+// after the run which spawned it has ended is flushed when it's done.
+class Output {
+    // with `-Djlox.outputBuffer=<bytes>`. 0 writes every line right away.
+    private static final int SIZE = Integer.getInteger("jlox.outputBuffer", 1 << 16);
+
+    // null for whatever `System.out` is at the time of flushing.
+    private final OutputStream stream;
+    private final FileChannel channel;
+    private final byte[] buffer = new byte[SIZE];
+    private int length = 0;
+
+    Output(OutputStream stream) {
+        this.stream = stream;
+        this.channel = null;
+    }
+
+    Output(FileChannel channel) {
+        this.stream = null;
+        this.channel = channel;
+    }
+
+    synchronized void println(String line) {
+        // most output is ascii, which is its own utf-8: copied a char at a time, with
+        // no array made on the way. anything else is left to the encoder.
+        int count = line.length();
+        if (length + count + 1 <= buffer.length) {
+            int start = length;
+            int i = 0;
+            while (i < count) {
+                char c = line.charAt(i);
+                if (c >= 0x80) break;
+                buffer[start + i++] = (byte) c;
+            }
+            if (i == count) {
+                buffer[start + count] = '\n';
+                length = start + count + 1;
+                return;
+            }
+        }
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        if (length + bytes.length > buffer.length) flush();
+        if (bytes.length > buffer.length) {
+            write(bytes, bytes.length);
+        } else {
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+    }
+
+    synchronized void flush() {
+        if (length > 0) write(buffer, length);
+        length = 0;
+        if (channel == null) {
+            try {
+                (stream != null ? stream : System.out).flush();
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+        }
+    }
+
+    private void write(byte[] bytes, int count) {
+        try {
+            if (channel != null) {
+                ByteBuffer remaining = ByteBuffer.wrap(bytes, 0, count);
+                while (remaining.hasRemaining()) channel.write(remaining);
+            } else {
+                (stream != null ? stream : System.out).write(bytes, 0, count);
+            }
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package deppep.jlox;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// data-parallel natives on the common fork-join pool. lox has no lists, so these
+// work over ranges of integers, `from` included and `to` excluded:
+//   parallelFor(0, 100, fun (i) { ... });             // calls fn(i) for every i
+//   var squares = parallelMap(0, 100, fun (i) { return i * i; });
+//   print squares(7);                                  // 49, computed in advance
+//   print parallelReduce(0, 100, fun (i) { return i; }, fun (a, b) { return a + b; });
+// the range is split in chunks, each run by a worker with an interpreter of its
+// own (see `Interpreter.fiber`). `combine` must be associative, it's called on
+// results in order but grouped any which way. reducing an empty range gives nil.
+//
+// the memory model: everything a callback did happens-before the native returns.
+// callbacks are best pure. globals and instance fields may be read and written
+// from many workers, each read or write being atomic (see `Environment` and
+// `LoxInstance`), but a read followed by a write is not: `o.n = o.n + 1` loses
+// updates, a reduction won't. captured locals are not safe to write at all.
+// workers have the default stack: callbacks can't recurse as deep as the main thread.
+class Parallel {
+    // a reduction's result for an empty chunk.
+    private static final Object NONE = new Object();
+
+    static void define(Environment globals) {
+        globals.define("parallelFor", new NativeFunction("parallelFor", 3, (interpreter, arguments) -> {
+            run(interpreter, arguments, callable(arguments.get(2), 1), null, null);
+            return null;
+        }));
+        globals.define("parallelMap", new NativeFunction("parallelMap", 3, (interpreter, arguments) -> {
+            int from = bound(arguments.get(0));
+            int to = bound(arguments.get(1));
+            if (interpreter != null && !interpreter.budget.allocate(Budget.ARRAY + 4L * Math.max(0, to - from))) {
+                throw new NativeFunction.Error("Out of memory.");
+            }
+            Object[] results = new Object[Math.max(0, to - from)];
+            run(interpreter, arguments, callable(arguments.get(2), 1), null, results);
+            return new NativeFunction("map", 1, (caller, index) -> {
+                if (!(index.get(0) instanceof Double i) || i != Math.floor(i) || i < from || i >= to) {
+                    throw new NativeFunction.Error("Index out of range.");
+                }
+                return results[i.intValue() - from];
+            });
+        }));
+        globals.define("parallelReduce", new NativeFunction("parallelReduce", 4, (interpreter, arguments) -> {
+            Object result = run(interpreter, arguments, callable(arguments.get(2), 1), callable(arguments.get(3), 2), null);
+            return result == NONE ? null : result;
+        }));
+    }
+
+    private static Object run(Interpreter interpreter, List<Object> arguments,
+                              LoxCallable function, LoxCallable combine, Object[] results) {
+        // flat functions bring an interpreter which can't be shared across threads.
+        if (interpreter == null) throw new NativeFunction.Error("Parallel natives need the tree interpreter.");
+        int from = bound(arguments.get(0));
+        int to = bound(arguments.get(1));
+        if (to <= from) return NONE;
+        // a few chunks per worker, for when some take longer than others.
+        int grain = Math.max(1, (to - from) / (ForkJoinPool.getCommonPoolParallelism() * 8));
+        return ForkJoinPool.commonPool().invoke(new Chunk(interpreter, function, combine, results, from, from, to, grain));
+    }
+
+    private static int bound(Object value) {
+        if (!(value instanceof Double bound) || bound != Math.floor(bound) || Math.abs(bound) > Integer.MAX_VALUE / 2) {
+            throw new NativeFunction.Error("Range bounds must be integers.");
+        }
+        return bound.intValue();
+    }
+
+    private static LoxCallable callable(Object value, int arity) {
+        if (!(value instanceof LoxCallable callable) || callable.arity() != arity) {
+            throw new NativeFunction.Error("Expect a function taking " + arity + (arity == 1 ? " argument." : " arguments."));
+        }
+        return callable;
+    }
+
+    private static class Chunk extends RecursiveTask<Object> {
+        private final Interpreter parent;
+        private final LoxCallable function;
+        private final LoxCallable combine;
+        private final Object[] results;
+        private final int offset, from, to, grain;
+
+        Chunk(Interpreter parent, LoxCallable function, LoxCallable combine, Object[] results,
+              int offset, int from, int to, int grain) {
+            this.parent = parent;
+            this.function = function;
+            this.combine = combine;
+            this.results = results;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Object compute() {
+            if (to - from > grain) {
+                int middle = from + (to - from) / 2;
+                Chunk left = new Chunk(parent, function, combine, results, offset, from, middle, grain);
+                Chunk right = new Chunk(parent, function, combine, results, offset, middle, to, grain);
+                left.fork();
+                Object second = right.compute();
+                Object first = left.join();
+                return combine(parent.fiber(), first, second);
+            }
+
+            Interpreter worker = parent.fiber();
+            Object accumulated = NONE;
+            for (int i = from; i < to; i++) {
+                Object value = function.call1(worker, (double) i);
+                if (results != null) results[i - offset] = value;
+                if (combine != null) accumulated = combine(worker, accumulated, value);
+            }
+            return accumulated;
+        }
+
+        private Object combine(Interpreter worker, Object first, Object second) {
+            if (combine == null || first == NONE) return second;
+            if (second == NONE) return first;
+            return combine.call2(worker, first, second);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package deppep.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// scans a large source splitting it in chunks, which are scanned in parallel on the
+// common fork-join pool, then stitched back together.
+// the only tokens spanning more than one line are strings and block comments, so a
+// chunk starting right after a newline which is not inside one of those can be scanned
+// without knowing anything about what comes before, except for the line number.
+// we can't know upfront where those newlines are (that would take scanning!), so
+// we are optimistic: we split after any newline, and check while stitching. a chunk
+// is good if the previous one stopped exactly where it starts. if it didn't, a string
+// or comment crossed the boundary, and the chunk gets rescanned from where the previous
+// one actually stopped. this way tokens and errors are the same of the sequential scanner.
+class ParallelScanner {
+    // below this, splitting costs more than it saves.
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    private final CharSequence source;
+    private final int chunks;
+
+    ParallelScanner(CharSequence source) {
+        // a few chunks per worker, so that an unlucky slow chunk doesn't hold everyone.
+        this(source, ForkJoinPool.getCommonPoolParallelism() > 1 ? 4 * ForkJoinPool.getCommonPoolParallelism() : 1);
+    }
+
+    ParallelScanner(CharSequence source, int chunks) {
+        this.source = source;
+        this.chunks = Math.max(1, Math.min(chunks, source.length() / MIN_CHUNK_SIZE));
+    }
+
+    private static class Chunk extends RecursiveAction {
+        final CharSequence source;
+        final int from;
+        final int to;
+        final List<Scanner.ScanError> errors = new ArrayList<>();
+        TokenBuffer tokens;
+        int end;  // where the scanner actually stopped
+        int lines;  // newlines consumed
+
+        Chunk(CharSequence source, int from, int to) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            Scanner scanner = new Scanner(source);
+            tokens = scanner.scanRange(from, to, errors);
+            end = scanner.position();
+            lines = scanner.line() - 1;
+        }
+    }
+
+    TokenBuffer scanBuffer() {
+        // nothing to split, e.g. a small source or a single core.
+        if (chunks == 1) return new Scanner(source).scanBuffer();
+
+        List<Chunk> tasks = new ArrayList<>();
+        int from = 0;
+        for (int i = 1; i <= chunks && from < source.length(); i++) {
+            int to = i == chunks ? source.length() : nextLine((int) ((long) source.length() * i / chunks));
+            if (to <= from) continue;
+            tasks.add(new Chunk(source, from, to));
+            from = to;
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        TokenBuffer tokens = new TokenBuffer(source);
+        int position = 0;
+        int lineOffset = 0;
+        for (Chunk chunk : tasks) {
+            if (chunk.from != position) {
+                // the previous chunk ran into this one: this was scanned from a wrong state.
+                chunk = new Chunk(source, position, Math.max(position, chunk.to));
+                chunk.compute();
+            }
+            tokens.append(chunk.tokens, lineOffset);
+            for (Scanner.ScanError error : chunk.errors) {
+                Lox.error(error.line() + lineOffset, error.message());
+            }
+            position = chunk.end;
+            lineOffset += chunk.lines;
+        }
+
+        tokens.add(TokenType.EOF, source.length(), 0, lineOffset + 1);
+        return tokens;
+    }
+
+    // position right after the first newline at or after `from`.
+    private int nextLine(int from) {
+        for (int i = from; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') return i + 1;
+        }
+        return source.length();
+    }
+}
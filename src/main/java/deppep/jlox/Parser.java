@@ -1,5 +1,6 @@
 /**
- * A recursive descent, abstact syntax tree parser implementing the following grammar:
+ * A recursive descent, abstact syntax tree parser implementing the following grammar
+ * (expressions are parsed with precedence climbing, see `parsePrecedence`):
  *     program          -> declariation* EOF;
  *     declaration      -> classDeclaration
  *                       | funDeclaration
@@ -61,22 +62,43 @@ class Parser {
 	// the braces repreent an empty class body
 	private static class ParseError extends RuntimeException {}
 	
-	private final List<Token> tokens;
-	private int current = 0;
+	private final TokenCursor tokens;
 	// todo: this flag are needed for supporting challenge 6.1 after introducing function
 	//  declaration and calls. Even with our static resolver it is not easy to remove these
 	//  flags. Could it be right to have them in parser? Think about it.
 	private boolean inFunCall = false;
 	private boolean inFunDec = false;
+	// how deep we are in the tree being built. machine-generated code can nest deep
+	// enough to overflow the java stack, here or in the passes walking the tree after
+	// us. past `maxDepth` we give up with a syntax error instead, see `nest`.
+	private final int maxDepth;
+	private int depth = 0;
+	// measured at some 330 bytes of stack per link in the walkers, against the 2048
+	// reserved per level.
+	private static final int LINKS_PER_LEVEL = 4;
+	private boolean tooDeep = false;
 
 	Parser(List<Token> tokens) {
+		this(TokenCursor.of(tokens));
+	}
+
+	Parser(TokenBuffer tokens) {
+		this(tokens.cursor());
+	}
+
+	Parser(TokenCursor tokens) {
+		this(tokens, Lox.MAX_DEPTH);
+	}
+
+	Parser(TokenCursor tokens, int maxDepth) {
 		this.tokens = tokens;
+		this.maxDepth = maxDepth;
 	}
 
 	List<Stmt> parse() {
 		List<Stmt> statements = new ArrayList<>();
-		while (!isAtEnd()) {
-			statements.add(declaration());
+		while (!done()) {
+			statements.add(topLevel());
 		}
 
 		// WE MOMENTARILY REMOVED PARSER ERROR CATCHING
@@ -90,6 +112,29 @@ class Parser {
 		return statements;
 	}
 
+	// for incremental parsing, which goes one top-level declaration at a time.
+	Stmt parseDeclaration() {
+		return topLevel();
+	}
+
+	// `maxDepth` assumes a stack of `Lox.STACK_SIZE`, which embedders may not run us
+	// on. running out of stack ends like going past `maxDepth`: we unwind to the top
+	// level, where there is stack to spare, and stop there.
+	private Stmt topLevel() {
+		try {
+			return declaration();
+		} catch (StackOverflowError overflow) {
+			depth = 0;
+			tooDeep = true;
+			error(peek(), "Too deeply nested.");
+			return null;
+		}
+	}
+
+	boolean done() {
+		return tooDeep || isAtEnd();
+	}
+
 	private Stmt declaration() {
 		try {
 			if (match(TokenType.CLASS)) return classDeclaration();
@@ -97,6 +142,12 @@ class Parser {
 			if (match(TokenType.VAR)) return varDeclaration();
 			return statement();
 		} catch (ParseError error) {
+			// past `maxDepth` we don't try to recover: synchronizing would take us right
+			// back in the deep end. we unwind to the top level, and stop there.
+			if (tooDeep) {
+				if (depth > 0) throw error;
+				return null;
+			}
 			// this is the right place for synchronize, because it's at the
 			// lowest priority. This means that whenever we encounter an error
 			// we will leave and get back to the start trying to parse the
@@ -139,12 +190,13 @@ class Parser {
 	}
 
 	private Stmt whileStatement() {
+		Token keyword = previous();
 		consume(TokenType.LEFT_PAREN, "Expect '(' after 'while'.");
 		Expr condition = expression();
 		consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
 
 		Stmt body = statement();
-		return new Stmt.While(condition, body);
+		return new Stmt.While(keyword, condition, body);
 	}
 
 	// challenge 9.3
@@ -155,15 +207,21 @@ class Parser {
 	}
 
 	private Stmt statement(){
-		if (match(TokenType.FOR)) return forStatement();
-		if (match(TokenType.BREAK)) return breakStatement();
-		if (match(TokenType.IF)) return ifStatement();
-		if (match(TokenType.PRINT)) return printStatement();
-		if (match(TokenType.RETURN)) return returnStatement();
-		if (match(TokenType.WHILE)) return whileStatement();
-		if (match(TokenType.LEFT_BRACE)) return new Stmt.Block(block());
-
-		return expressionStatement();
+		int entered = depth;
+		try {
+			nest();
+			if (match(TokenType.FOR)) return forStatement();
+			if (match(TokenType.BREAK)) return breakStatement();
+			if (match(TokenType.IF)) return ifStatement();
+			if (match(TokenType.PRINT)) return printStatement();
+			if (match(TokenType.RETURN)) return returnStatement();
+			if (match(TokenType.WHILE)) return whileStatement();
+			if (match(TokenType.LEFT_BRACE)) return new Stmt.Block(block());
+
+			return expressionStatement();
+		} finally {
+			depth = entered;
+		}
 	}
 
 	// this is an example of _desugaring_. for loops in Lox are just syntactic
@@ -175,6 +233,7 @@ class Parser {
 	// nor we had to change the interpreter class in any way.
 	private Stmt forStatement() {
 		// for reference: `for (initializer; condition; increment) body;`
+		Token keyword = previous();
 		consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
 
 		Stmt initializer;
@@ -206,7 +265,7 @@ class Parser {
 		// this puts will together the loop as a while statement
 		if (condition == null)
 			condition = new Expr.Literal(true);
-		body = new Stmt.While(condition, body);
+		body = new Stmt.While(keyword, condition, body);
 
 		// optionally we add the initializer statement, prior to the loop
 		if (initializer != null)
@@ -308,198 +367,176 @@ class Parser {
 		return new Expr.AnonFunction(parameters, body);
 	}
 
-	private Expr expression() {
-		return comma();
-	}
-
-	// challenge 6.3
-	private Expr comma() {
-		Expr expr = assignment();
-		if (inFunCall || inFunDec) {
-			return expr;
-		}
-		while (match(TokenType.COMMA)) {
-			Token token = previous();
-			Expr right = assignment();
-			expr = new Expr.Binary(expr, token, right);
-		}
-
-		return expr;
-	}
-
-	private Expr assignment() {
-		// this works because we can parse l-value as if they were expressions
-		Expr expr = ternary();
-
-		if (match(TokenType.EQUAL)) {
-			Token equals = previous();
-			Expr right = assignment();
-			// right associative: we don't loop but recur
-			// here's the trick, check if the left expression results in a valid l-value.
-			if (expr instanceof Expr.Variable) {
-				Token name = ((Expr.Variable) expr).name;
-				return new Expr.Assign(name, right);
-			} else if (expr instanceof Expr.Get) {
-				Expr.Get get = (Expr.Get)expr;
-				return new Expr.Set(get.object, get.name, right);
-			}
-			// only report. no need to synchronize.
-			error(equals, "Invalid assignment target.");
+	// expressions are parsed with a Pratt parser (see chapter 17 of the book, where clox
+	// does the same). rather than a function per precedence level, each calling the next
+	// one down to `primary` (a single literal used to take 12 java frames!), every token
+	// type gets a binding power, and a single loop climbs them. the trees built are the
+	// very same of the expression grammar at the top of this file.
+	private enum Precedence {
+		NONE,
+		COMMA,       // ,  (challenge 6.1)
+		ASSIGNMENT,  // =
+		TERNARY,     // ?: (challenge 6.2)
+		OR,          // or
+		AND,         // and
+		EQUALITY,    // == !=
+		COMPARISON,  // < > <= >=
+		TERM,        // + -
+		FACTOR,      // * /
+		UNARY,       // ! -
+		CALL;        // . ()
+
+		private static final Precedence[] VALUES = values();
+
+		// left associative operators parse their right operand one level up.
+		Precedence next() {
+			return VALUES[ordinal() + 1];
 		}
-		return expr;
 	}
 
-	// challenge 6.2
-	private Expr ternary() {
-		Expr left = or();
-
-		if (match(TokenType.QUESTION)) {
-			Token first = previous();
-			Expr middle = ternary();
-			if (match(TokenType.COLON)) {
-				Token second = previous();
-				Expr right = ternary();
-				return new Expr.Ternary(left, first, middle, second, right);
-			} else {
-				throw error(peek(), "Expect ':' after '?' for ternary conditional expression.");
-			}
-		}
-		return left;
+	// binding power of each token type when found after an operand, indexed by ordinal.
+	private static final Precedence[] INFIX = new Precedence[TokenType.values().length];
+
+	static {
+		Arrays.fill(INFIX, Precedence.NONE);
+		INFIX[TokenType.COMMA.ordinal()] = Precedence.COMMA;
+		INFIX[TokenType.EQUAL.ordinal()] = Precedence.ASSIGNMENT;
+		INFIX[TokenType.QUESTION.ordinal()] = Precedence.TERNARY;
+		INFIX[TokenType.OR.ordinal()] = Precedence.OR;
+		INFIX[TokenType.AND.ordinal()] = Precedence.AND;
+		INFIX[TokenType.BANG_EQUAL.ordinal()] = Precedence.EQUALITY;
+		INFIX[TokenType.EQUAL_EQUAL.ordinal()] = Precedence.EQUALITY;
+		INFIX[TokenType.GREATER.ordinal()] = Precedence.COMPARISON;
+		INFIX[TokenType.GREATER_EQUAL.ordinal()] = Precedence.COMPARISON;
+		INFIX[TokenType.LESS.ordinal()] = Precedence.COMPARISON;
+		INFIX[TokenType.LESS_EQUAL.ordinal()] = Precedence.COMPARISON;
+		INFIX[TokenType.MINUS.ordinal()] = Precedence.TERM;
+		INFIX[TokenType.PLUS.ordinal()] = Precedence.TERM;
+		INFIX[TokenType.SLASH.ordinal()] = Precedence.FACTOR;
+		INFIX[TokenType.STAR.ordinal()] = Precedence.FACTOR;
+		INFIX[TokenType.LEFT_PAREN.ordinal()] = Precedence.CALL;
+		INFIX[TokenType.DOT.ordinal()] = Precedence.CALL;
 	}
 
-	private Expr or() {
-		Expr expr = and();
-
-		while (match(TokenType.OR)) {
-			Token operator = previous();
-			Expr right = and();
-			expr = new Expr.Logical(expr, operator, right);
-		}
-
-		return expr;
+	private Expr expression() {
+		return parsePrecedence(Precedence.COMMA);
 	}
 
-	private Expr and() {
-		Expr expr = equality();
+	// parses an expression made of operators binding at least as tight as `precedence`.
+	private Expr parsePrecedence(Precedence precedence) {
+		int entered = depth;
+		int links = 0;
+		try {
+			nest();
+			Expr expr = prefix(precedence);
+
+			while (true) {
+				TokenType type = tokens.peekType();
+				if (INFIX[type.ordinal()].compareTo(precedence) < 0) break;
+				// challenge 6.1: in argument and parameter lists commas are separators.
+				if (type == TokenType.COMMA && (inFunCall || inFunDec)) break;
+
+				tokens.advance();
+				// chains like `a + b + c` or `f()()` grow the tree down its left side, with
+				// no recursion here, but the walkers recurse down that side all the same.
+				// a link costs them much less stack than a level of real nesting (see
+				// `Lox.STACK_PER_LEVEL`): a few links count as one level.
+				if (++links % LINKS_PER_LEVEL == 0) nest();
+				expr = infix(expr, type);
+			}
 
-		while (match(TokenType.AND)) {
-			Token operator = previous();
-			Expr right = equality();
-			expr = new Expr.Logical(expr, operator, right);
+			return expr;
+		} finally {
+			depth = entered;
 		}
-
-		return expr;
 	}
 
-	private Expr equality() {
-		Expr expr = comparison();
-
-		while (match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
-			Token operator = previous();
-			Expr right = comparison();
-			// note that if we had Expr.Binary(left, operator, expr);
-			// the rule would be right associative.
-			expr = new Expr.Binary(expr, operator, right);
+	private Expr prefix(Precedence precedence) {
+		switch (tokens.peekType()) {
+		case TokenType.BANG:
+		case TokenType.MINUS: {
+			Token operator = advance();
+			// note that the operand is parsed at the same level: this makes unary
+			// operators right associative, so `--a` is `-(-a)`.
+			Expr right = parsePrecedence(Precedence.UNARY);
+			return new Expr.Unary(operator, right);
 		}
-		// for example consider this:
-		// A == B == C == D
-		// after the loop we end up with expr being like:
-		// Expr.Binary(Expr.Binary(Expr.Binary(A, "==", B), "==", C), "==", D)
-		return expr;
-	}
-
-	private Expr comparison() {
-		// note the code being practically equal to that of `equality`
-		// this is because the production rule _is_ formally equal to that!
-		Expr expr = errTerm();
-
-		while (match(TokenType.GREATER,
-					 TokenType.GREATER_EQUAL,
-					 TokenType.LESS,
-					 TokenType.LESS_EQUAL)) {
-			Token operator = previous();
-			Expr right = errTerm();
-			expr = new Expr.Binary(expr, operator, right);
+		case TokenType.PLUS:
+			// challenge 6.3
+			// an error production, valid where a comparison operand could start. why here?
+			// consider `+ a * b`. `*` should bind tighter, the correct precedence here
+			// should be + (a * b). on the other hand, consider `+ a > 2`. this should
+			// be interpreted as (+ a) > 2. anywhere tighter, `+` is just not an expression.
+			if (precedence.compareTo(Precedence.TERM) <= 0) {
+				advance();
+				Expr _ = parsePrecedence(Precedence.TERM);
+				throw error(previous(), "Can not start expression with '+' operator");
+			}
+			break;
+		default:
+			break;
 		}
-
-		return expr;
-	}
-
-	// challenge 6.3
-	// why here? consider `+ a * b`. `*` should bind tighter, the correct precedence
-	// here should be + (a * b). on the other hand, consider `+ a > 2`. this should
-	// be interpreted as (+ a) > 2.
-	private Expr errTerm() {
-		if (match(TokenType.PLUS)) {
-			Expr _ = term();
-			throw error(previous(), "Can not start expression with '+' operator");
+		return primary();
+	}
+
+	// `type` is the operator type, which was just consumed.
+	private Expr infix(Expr left, TokenType type) {
+		Token operator = previous();
+
+		switch (type) {
+		case TokenType.EQUAL:
+			return assignment(left, operator);
+		case TokenType.QUESTION:
+			return ternary(left, operator);
+		case TokenType.OR:
+		case TokenType.AND:
+			return new Expr.Logical(left, operator, parsePrecedence(INFIX[type.ordinal()].next()));
+		case TokenType.LEFT_PAREN:
+			return finishCall(left);
+		case TokenType.DOT: {
+			Token name = consume(TokenType.IDENTIFIER, "Expected property name after '.'");
+			return new Expr.Get(left, name);
 		}
-		return term();
-	}
-
-	private Expr term() {
-		Expr expr = factor();
-
-		// match arguments are in order of precedence,
-		// first addition, then subtraction
-		while (match(TokenType.MINUS, TokenType.PLUS)) {
-			Token operator = previous();
-			Expr right = factor();
-			expr = new Expr.Binary(expr, operator, right);
+		default:
+			// all binary operators are left associative: if we had parsed the right operand
+			// at the same level, A == B == C would be A == (B == C).
+			return new Expr.Binary(left, operator, parsePrecedence(INFIX[type.ordinal()].next()));
 		}
-
-		return expr;
 	}
 
-	private Expr factor() {
-		Expr expr = unary();
-
-		while (match(TokenType.SLASH, TokenType.STAR)) {
-			Token operator = previous();
-			Expr right = unary();
-			expr = new Expr.Binary(expr, operator, right);
+	private Expr assignment(Expr expr, Token equals) {
+		// this works because we can parse l-value as if they were expressions.
+		// right associative: the right operand is parsed at the same level.
+		Expr right = parsePrecedence(Precedence.ASSIGNMENT);
+		// here's the trick, check if the left expression results in a valid l-value.
+		if (expr instanceof Expr.Variable) {
+			Token name = ((Expr.Variable) expr).name;
+			return new Expr.Assign(name, right);
+		} else if (expr instanceof Expr.Get) {
+			Expr.Get get = (Expr.Get)expr;
+			return new Expr.Set(get.object, get.name, right);
 		}
-
+		// only report. no need to synchronize.
+		error(equals, "Invalid assignment target.");
 		return expr;
 	}
 
-	private Expr unary() {
-		if (match(TokenType.BANG, TokenType.MINUS)) {
-			Token operator = previous();
-			Expr right = unary();
-			return new Expr.Unary(operator, right);
-		}
-		
-		// note that in this case right recursion implements
-		// right associativity. why not using recursion with left-associative
-		// rules like the Binarys before? the book says recursion does not
-		// play good on the left. my explanation on this is that we can tail
-		// recur on the right, but not on the left, hence left recursion may
-		// cause stack overflows. however keep in mind this is my idea, I am
-		// not sure about the actual reason for this.
-		return call();
-	}
-
-	private Expr call() {
-		Expr expr = primary();
-
-		while (true) {
-			if (match(TokenType.LEFT_PAREN)) {
-				expr = finishCall(expr);
-			} else if (match(TokenType.DOT)) {
-				Token name = consume(TokenType.IDENTIFIER, "Expected property name after '.'");
-				expr = new Expr.Get(expr, name);
-			} else {
-				break;
-			}
+	// challenge 6.2
+	private Expr ternary(Expr left, Token first) {
+		Expr middle = parsePrecedence(Precedence.TERNARY);
+		if (match(TokenType.COLON)) {
+			Token second = previous();
+			Expr right = parsePrecedence(Precedence.TERNARY);
+			return new Expr.Ternary(left, first, middle, second, right);
 		}
-
-		return expr;
+		throw error(peek(), "Expect ':' after '?' for ternary conditional expression.");
 	}
 
 	private Expr finishCall(Expr callee) {
 		List<Expr> arguments = new ArrayList<>();
 		if (!check(TokenType.RIGHT_PAREN)) {
+			// calls nest, as in `f(g(a), b)`: the flag is put back as it was, not cleared.
+			boolean outer = inFunCall;
 			inFunCall = true;
 			do {
 				// this limit on argument size is imposed for compatibility with
@@ -510,7 +547,7 @@ class Parser {
 				}
 				arguments.add(expression());
 			} while (match(TokenType.COMMA));
-			inFunCall = false;
+			inFunCall = outer;
 		}
 
 		Token paren = consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments.");
@@ -523,7 +560,8 @@ class Parser {
 		if (match(TokenType.FALSE)) return new Expr.Literal(false);
 		if (match(TokenType.TRUE)) return new Expr.Literal(true);
 		if (match(TokenType.NIL)) return new Expr.Literal(null);
-		if (match(TokenType.NUMBER, TokenType.STRING)) return new Expr.Literal(previous().literal);
+		if (match(TokenType.NUMBER)) return new Expr.Literal(previous().literal);
+		if (match(TokenType.STRING)) return new Expr.Literal(previous().literal);
 		if (match(TokenType.THIS)) return new Expr.This(previous());
 		if (match(TokenType.SUPER)) {
 			Token keyword = previous();
@@ -550,13 +588,13 @@ class Parser {
 		throw error(peek(), message);
 	}
 
-	private boolean match(TokenType... types) {
-		// as with the lexer, will consume the token _if match_
-		for (TokenType type : types) {
-			if (check(type)) {
-				advance();
-				return true;
-			}
+	private boolean match(TokenType type) {
+		// as with the lexer, will consume the token _if match_.
+		// no varargs here, that would allocate an array at each call.
+		if (check(type)) {
+			// no need to materialize the token here, `previous` will if needed.
+			tokens.advance();
+			return true;
 		}
 		return false;
 	}
@@ -564,26 +602,34 @@ class Parser {
 	private boolean check(TokenType type) {
 		// does not consume.
 		if (isAtEnd()) return false;
-		return peek().type == type;
+		return tokens.peekType() == type;
 	}
 
 	private Token advance() {
 		// again, as with lexer, it consumes
-		if (!isAtEnd()) current++;
+		if (!isAtEnd()) tokens.advance();
 		return previous();
 	}
 
 	private boolean isAtEnd() {
-		return peek().type == TokenType.EOF;
+		return tokens.peekType() == TokenType.EOF;
 	}
 
 	private Token peek() {
 		// does not consume
-		return tokens.get(current);
+		return tokens.peek();
 	}
 
 	private Token previous() {
-		return tokens.get(current - 1);
+		return tokens.previous();
+	}
+
+	// callers restore `depth` on the way out, errors included.
+	private void nest() {
+		if (++depth > maxDepth) {
+			tooDeep = true;
+			throw error(peek(), "Too deeply nested.");
+		}
 	}
 
 	private ParseError error(Token token, String message) {
@@ -610,7 +656,7 @@ class Parser {
 			if (previous().type == TokenType.SEMICOLON) return;
 
 			// if we are at one of these, we are probably at a new statement too
-			switch (peek().type) {
+			switch (tokens.peekType()) {
 			case TokenType.CLASS:
 			case TokenType.FUN:
 			case TokenType.VAR:
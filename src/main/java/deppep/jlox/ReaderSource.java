@@ -0,0 +1,92 @@
+package deppep.jlox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+// source read from a stream as the scanner goes, e.g. a program piped into stdin. we
+// hold a window of it: from the start of the token the parser consumed last, which
+// may still be asked for its lexeme, to as far as we have read. the scanner tells us
+// when it moves on (see `Scanner.Stream.advance`), and the text before is dropped
+// the next time the window fills up. memory stays bounded by the longest token, not
+// by the size of the input.
+//
+// the scanner can't ask for the length to tell whether it's at the end: that would
+// mean waiting for the whole input. it asks whether there is a char at a given index
+// instead (see `has`), and we block only when that one is yet to be read. a statement
+// runs as soon as its last char arrives. right before blocking, `idle` runs: a chance
+// to flush output while we wait for more input.
+//
+// offsets are ints, as for any `CharSequence`: inputs up to 2G chars.
+class ReaderSource implements CharSequence {
+    private final Reader input;
+    private final Runnable idle;
+    private char[] window = new char[1 << 16];
+    // offset in the input of `window[0]`, and where what we have read ends.
+    private int base = 0;
+    private int end = 0;
+    // before here, text can be dropped.
+    private int released = 0;
+    private boolean eof = false;
+
+    ReaderSource(Reader input, Runnable idle) {
+        this.input = input;
+        this.idle = idle;
+    }
+
+    void release(int offset) {
+        released = offset;
+    }
+
+    // whether the input goes as far as `index`, reading up to it if need be.
+    boolean has(int index) {
+        while (index >= end && !eof) fill();
+        return index < end;
+    }
+
+    // what has been read so far.
+    @Override
+    public int length() {
+        return end;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return window[index - base];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(window, start - base, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(window, 0, end - base);
+    }
+
+    private void fill() {
+        if (end - base == window.length) {
+            int dropped = released - base;
+            // dropping little would leave little room, and we would be back soon.
+            if (dropped >= window.length / 2) {
+                System.arraycopy(window, dropped, window, 0, end - released);
+                base = released;
+            } else {
+                window = Arrays.copyOf(window, window.length * 2);
+            }
+        }
+        try {
+            if (!input.ready()) idle.run();
+            int read = input.read(window, end - base, window.length - (end - base));
+            if (read < 0) {
+                eof = true;
+            } else {
+                end += read;
+            }
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+}
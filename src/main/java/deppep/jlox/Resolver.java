@@ -15,6 +15,8 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     // challenge 9.3
     private LoopType currentLoop = LoopType.NONE;
     private ClassType currentClass = ClassType.NONE;
+    // the last name we came across, to tell where we were if we run out of stack.
+    private Token last = null;
 
     // challenge 11.3
     // rather than storing a single value, we are storing a record, transforming our
@@ -282,8 +284,27 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     void resolve(List<Stmt> statements) {
-        for (Stmt statement: statements) {
-            resolve(statement);
+        // nested blocks and functions come back here with a scope open.
+        if (!scopes.isEmpty()) {
+            for (Stmt statement: statements) {
+                resolve(statement);
+            }
+            return;
+        }
+        // at the top level: the parser bounds nesting, but the thread we run on may
+        // have less stack than that takes, see `Lox.STACK_SIZE`. embedders run us on
+        // threads of their own.
+        try {
+            for (Stmt statement: statements) {
+                resolve(statement);
+            }
+        } catch (StackOverflowError overflow) {
+            scopes.clear();
+            if (last != null) {
+                Lox.error(last, "Too deeply nested.");
+            } else {
+                Lox.error(1, "Too deeply nested.");
+            }
         }
     }
 
@@ -330,6 +351,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void declare(Token name) {
+        last = name;
         if (scopes.isEmpty()) return;
 
         Map<String, VarInfo> scope = scopes.peek();
@@ -345,6 +367,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void resolveLocal(Expr expr, Token name) {
+        last = name;
         for (int i = scopes.size() - 1; i >= 0; i--) {
             if (scopes.get(i).containsKey(name.lexeme)) {
                 // `size - 1 - i` will be 0 if we are in the innermost scope
@@ -1,79 +1,220 @@
 package deppep.jlox;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 
 class Scanner {
-	private final String source;
-	private final List<Token> tokens = new ArrayList<>(); // j. diamond operator
+	// usually a `String`, but could also be a memory mapped file, see `ByteSource`.
+	private final CharSequence source;
+	// the source again when it's read as we go, else null. see `has`.
+	private final ReaderSource reader;
+	// tokens are packed in a compact buffer, see `TokenBuffer`.
+	private final TokenBuffer tokens;
 	private int start = 0;
 	private int current = 0;
 	private int line = 1;  // we keep line number for error reporting
+	// when not null, errors are collected here rather than reported. this is for
+	// `ParallelScanner`, which can only tell which errors are real after the fact.
+	private List<ScanError> errors = null;
 	// for reporting also columns we would keep note of offset since beginning
 	// that's  faster than actually using a variable for column number, at least
 	// where we actually need to be fast, i.e. when scanning. it will be slower
 	// when reporting errors because we will have to actually skip lines up
 	// to line, than count columns up to current.
-	private static final Map<String, TokenType> keywords;
+
+	// character classes, looked up in a precomputed table rather than through
+	// chains of range checks. anything outside ascii is OTHER.
+	private static final byte OTHER = 0;
+	private static final byte DIGIT = 1;
+	private static final byte ALPHA = 2;
+	private static final byte[] CLASSES = new byte[128];
+	// punctuation which makes a token on its own, with no need of look-ahead.
+	private static final TokenType[] SINGLE = new TokenType[128];
 
 	static {
-		keywords = new HashMap<>();
-		keywords.put("and", TokenType.AND);
-		keywords.put("break", TokenType.BREAK);  // challenge 9.3
-		keywords.put("class", TokenType.CLASS);
-		keywords.put("else", TokenType.ELSE);
-		keywords.put("false", TokenType.FALSE);
-		keywords.put("for", TokenType.FOR);
-		keywords.put("fun", TokenType.FUN);
-		keywords.put("if", TokenType.IF);
-		keywords.put("nil", TokenType.NIL);
-		keywords.put("or", TokenType.OR);
-		keywords.put("print", TokenType.PRINT);
-		keywords.put("return", TokenType.RETURN);
-		keywords.put("super", TokenType.SUPER);
-		keywords.put("this", TokenType.THIS);
-		keywords.put("true", TokenType.TRUE);
-		keywords.put("var", TokenType.VAR);
-		keywords.put("while", TokenType.WHILE);
+		for (char c = '0'; c <= '9'; c++) CLASSES[c] = DIGIT;
+		for (char c = 'a'; c <= 'z'; c++) CLASSES[c] = ALPHA;
+		for (char c = 'A'; c <= 'Z'; c++) CLASSES[c] = ALPHA;
+		CLASSES['_'] = ALPHA;
+
+		SINGLE['('] = TokenType.LEFT_PAREN;
+		SINGLE[')'] = TokenType.RIGHT_PAREN;
+		SINGLE['{'] = TokenType.LEFT_BRACE;
+		SINGLE['}'] = TokenType.RIGHT_BRACE;
+		SINGLE[','] = TokenType.COMMA;
+		SINGLE['.'] = TokenType.DOT;
+		SINGLE['-'] = TokenType.MINUS;
+		SINGLE['+'] = TokenType.PLUS;
+		SINGLE[';'] = TokenType.SEMICOLON;
+		SINGLE['*'] = TokenType.STAR;
+		SINGLE[':'] = TokenType.COLON;
+		SINGLE['?'] = TokenType.QUESTION;
 	}
 	
-	Scanner(String source) {
+	record ScanError(int line, String message) {}
+
+	Scanner(CharSequence source) {
 		this.source = source;
+		this.reader = source instanceof ReaderSource r ? r : null;
+		this.tokens = new TokenBuffer(source);
+	}
+
+	// scans the tokens starting in source[from, to), as a chunk of the whole source.
+	// tokens starting before `to` are scanned to completion, even when they end past
+	// it (think of a multiline string). line numbers are relative to `from`, which must
+	// be at the beginning of a line.
+	TokenBuffer scanRange(int from, int to, List<ScanError> errors) {
+		this.errors = errors;
+		current = from;
+		while (current < to && !isAtEnd()) {
+			start = current;
+			scanToken();
+		}
+		return tokens;
+	}
+
+	// where the scanner stopped, and the line it was at.
+	int position() {
+		return current;
+	}
+
+	int line() {
+		return line;
 	}
 
 	List<Token> scanTokens() {
+		return scanBuffer().toList();
+	}
+
+	TokenBuffer scanBuffer() {
 		while (!isAtEnd()) {
 			// at beginning of next lexeme
 			start = current;  // this represents where present lexeme starts
 			scanToken();
 		}
 
-		tokens.add(new Token(TokenType.EOF, "", null, line));
+		tokens.add(TokenType.EOF, current, 0, line);
 		return tokens;
 	}
 
+	// streaming mode: rather than scanning the whole source upfront, tokens are scanned
+	// one at a time as the parser pulls them, and dropped as soon as they are consumed.
+	// the buffer works as a lookahead window which never holds more than two tokens,
+	// the previous and the current one, so memory stays bounded whatever the input size.
+	// as a bonus, scanning and parsing errors get reported in source order.
+	// the next token is scanned only once the parser looks at it: over a `ReaderSource`
+	// a statement can run before the input past its end has arrived.
+	Stream stream() {
+		return new Stream();
+	}
+
+	// streams starting from the middle of the source, at the given line. `from` must
+	// not be inside a token, a string or a comment: the end of a token is always safe.
+	Stream stream(int from, int line) {
+		this.current = from;
+		this.line = line;
+		return new Stream();
+	}
+
+	class Stream implements TokenCursor {
+		// 0 before the first advance, when there is no previous token yet, 1 after.
+		private int current = 0;
+		private int cachedIndex = -1;
+		private Token cached;
+		// whether the current token is yet to be scanned.
+		private boolean pending = false;
+		// given to tokens as they are materialized, see `Token.Shift`.
+		private Token.Shift shift = null;
+
+		private Stream() {
+			scanNext();
+		}
+
+		@Override
+		public TokenType peekType() {
+			if (pending) scanPending();
+			return tokens.type(current);
+		}
+
+		@Override
+		public Token peek() {
+			if (pending) scanPending();
+			return at(current);
+		}
+
+		@Override
+		public Token previous() {
+			return at(current - 1);
+		}
+
+		@Override
+		public void advance() {
+			if (pending) scanPending();
+			// the current token becomes the previous one, everything before it is dropped.
+			tokens.keepLast();
+			// and so is the text before it, if it's coming from a stream.
+			if (reader != null) reader.release(tokens.start(0));
+			pending = true;
+			current = 1;
+			cachedIndex = -1;
+		}
+
+		// where tokens are in the source, for who needs to map them back to the text.
+		int peekStart() {
+			if (pending) scanPending();
+			return tokens.start(current);
+		}
+
+		int previousEnd() {
+			return tokens.start(current - 1) + tokens.length(current - 1);
+		}
+
+		int previousLine() {
+			return tokens.line(current - 1);
+		}
+
+		void shift(Token.Shift shift) {
+			this.shift = shift;
+			cachedIndex = -1;
+		}
+
+		private void scanPending() {
+			scanNext();
+			pending = false;
+		}
+
+		private Token at(int i) {
+			if (i != cachedIndex) {
+				cached = tokens.token(i, shift);
+				cachedIndex = i;
+			}
+			return cached;
+		}
+	}
+
+	// scans until one more token lands in the buffer, or the end of source.
+	private void scanNext() {
+		int size = tokens.size();
+		while (tokens.size() == size && !isAtEnd()) {
+			start = current;
+			scanToken();
+		}
+
+		if (tokens.size() == size) tokens.add(TokenType.EOF, current, 0, line);
+	}
+
 	private void scanToken() {
 		char c = advance();
-		
+
+		// single char tokens are a plain table look-up.
+		TokenType single = c < 128 ? SINGLE[c] : null;
+		if (single != null) {
+			addToken(single);
+			return;
+		}
+
 		switch (c) {
-		case '(': addToken(TokenType.LEFT_PAREN); break;
-		case ')': addToken(TokenType.RIGHT_PAREN); break;
-		case '{': addToken(TokenType.LEFT_BRACE); break;
-		case '}': addToken(TokenType.RIGHT_BRACE); break;
-		case ',': addToken(TokenType.COMMA); break;
-		case '.': addToken(TokenType.DOT); break;
-		case '-': addToken(TokenType.MINUS); break;
-		case '+': addToken(TokenType.PLUS); break;
-		case ';': addToken(TokenType.SEMICOLON); break;
-		case '*': addToken(TokenType.STAR); break;
-		case ':': addToken(TokenType.COLON); break;
-		case '?': addToken(TokenType.QUESTION); break;
-
-
-			case '!':
+		case '!':
 			addToken(match('=') ? TokenType.BANG_EQUAL: TokenType.BANG);
 			break;
 	    case '=':
@@ -115,7 +256,7 @@ class Scanner {
 			} else if (isAlpha(c)) {
 				identifier();
 			} else {
-				Lox.error(line, "unexpected character.");
+				error("unexpected character.");
 			}
 			break;
 			// we keep scanning since we want to catch as many errors as possible.
@@ -130,15 +271,14 @@ class Scanner {
 		}
 
 		if (isAtEnd()) {
-			Lox.error(line, "Unterminated string.");
+			error("Unterminated string.");
 			return;
 		}
 
 		advance(); // for the closing `"`.
 
-		// trim surrounding quotes.
-		String value = source.substring(start + 1, current - 1);
-		addToken(TokenType.STRING, value);
+		// the buffer will trim surrounding quotes when the literal is asked for.
+		addToken(TokenType.STRING);
 	}
 
 	private void number() {
@@ -150,17 +290,98 @@ class Scanner {
 			while (isDigit(peek())) advance();
 		}
 
-		addToken(TokenType.NUMBER, Double.parseDouble(source.substring(start, current)));
+		// the value is parsed lazily by the buffer, see `parseNumber`.
+		addToken(TokenType.NUMBER);
+	}
+
+	// exact powers of ten: all of these are representable as doubles.
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	// parses the number literal in source[start, end) without allocating a substring.
+	// lox numbers are just `digits ("." digits)?`, so the value is an integer mantissa
+	// divided by a power of ten. when the mantissa fits the 53 bits of a double and the
+	// power is at most 1e22, both are exact doubles and a single (ieee, correctly rounded)
+	// division gives the correctly rounded result. this is Clinger's fast path, the first
+	// step of Eisel-Lemire style parsers, and covers almost every literal out there.
+	// for the rest we fall back to the jdk.
+	static double parseNumber(CharSequence source, int start, int end) {
+		long mantissa = 0;
+		int significant = 0;
+		int fraction = 0;
+		boolean dot = false;
+		for (int i = start; i < end; i++) {
+			char c = source.charAt(i);
+			if (c == '.') {
+				dot = true;
+				continue;
+			}
+			if (dot) fraction++;
+			// leading zeros don't count, they can't overflow the mantissa.
+			if (mantissa == 0 && c == '0') continue;
+			// 18 digits always fit a long, one more may not.
+			if (++significant > 18) return Double.parseDouble(source.subSequence(start, end).toString());
+			mantissa = mantissa * 10 + (c - '0');
+		}
+
+		if (mantissa > (1L << 53) || fraction >= POWERS_OF_TEN.length)
+			return Double.parseDouble(source.subSequence(start, end).toString());
+		return (double) mantissa / POWERS_OF_TEN[fraction];
 	}
 
 	private void identifier() {
 		// this is max munching principle, keep if in doubt and take the chunk
 		// of code which matches the most characters!
 		while (isAlphaNumeric(peek())) advance();
-		String text = source.substring(start, current);
-		TokenType type = keywords.get(text);
-		if (type == null) type = TokenType.IDENTIFIER;
-		addToken(type);
+		addToken(identifierType());
+	}
+
+	// keywords are recognized walking a small trie, hardcoded as nested switches over
+	// the lexeme characters (this is how clox does it). differently from looking the
+	// lexeme up in a map, this never allocates a substring.
+	private TokenType identifierType() {
+		switch (source.charAt(start)) {
+		case 'a': return checkKeyword(1, "nd", TokenType.AND);
+		case 'b': return checkKeyword(1, "reak", TokenType.BREAK);  // challenge 9.3
+		case 'c': return checkKeyword(1, "lass", TokenType.CLASS);
+		case 'e': return checkKeyword(1, "lse", TokenType.ELSE);
+		case 'f':
+			if (current - start > 1) {
+				switch (source.charAt(start + 1)) {
+				case 'a': return checkKeyword(2, "lse", TokenType.FALSE);
+				case 'o': return checkKeyword(2, "r", TokenType.FOR);
+				case 'u': return checkKeyword(2, "n", TokenType.FUN);
+				}
+			}
+			break;
+		case 'i': return checkKeyword(1, "f", TokenType.IF);
+		case 'n': return checkKeyword(1, "il", TokenType.NIL);
+		case 'o': return checkKeyword(1, "r", TokenType.OR);
+		case 'p': return checkKeyword(1, "rint", TokenType.PRINT);
+		case 'r': return checkKeyword(1, "eturn", TokenType.RETURN);
+		case 's': return checkKeyword(1, "uper", TokenType.SUPER);
+		case 't':
+			if (current - start > 1) {
+				switch (source.charAt(start + 1)) {
+				case 'h': return checkKeyword(2, "is", TokenType.THIS);
+				case 'r': return checkKeyword(2, "ue", TokenType.TRUE);
+				}
+			}
+			break;
+		case 'v': return checkKeyword(1, "ar", TokenType.VAR);
+		case 'w': return checkKeyword(1, "hile", TokenType.WHILE);
+		}
+		return TokenType.IDENTIFIER;
+	}
+
+	private TokenType checkKeyword(int offset, String rest, TokenType type) {
+		if (current - start != offset + rest.length()) return TokenType.IDENTIFIER;
+		for (int i = 0; i < rest.length(); i++) {
+			if (source.charAt(start + offset + i) != rest.charAt(i)) return TokenType.IDENTIFIER;
+		}
+		return type;
 	}
 
 	// challenge 4.4
@@ -186,6 +407,14 @@ class Scanner {
 		}
 	}
 	
+	private void error(String message) {
+		if (errors != null) {
+			errors.add(new ScanError(line, message));
+		} else {
+			Lox.error(line, message);
+		}
+	}
+
 	private boolean match(char expected) {
 		// for matching double-char tokens.
 		// consumes current character when matching.
@@ -208,7 +437,7 @@ class Scanner {
 	}
 
 	private char peekNext() {
-		if (current + 1 >= source.length()) return '\0';
+		if (!has(current + 1)) return '\0';
 		return source.charAt(current + 1);
 	}
 	// note that the two functions above could have been easily be superseeded by
@@ -216,32 +445,35 @@ class Scanner {
 	// because it tells to the user that we at max do two look-ahead.
 	// the more the look-ahead, the slower the scanner.
 
+	private static byte charClass(char c) {
+		return c < 128 ? CLASSES[c] : OTHER;
+	}
+
 	private boolean isDigit(char c) {
 		// we make our own because the standard library one will consider digits
 		// a lot of funny stuff like devanagari (indian) numbers and others.
-		return c >= '0' && c <='9';
+		return charClass(c) == DIGIT;
 	}
 	
 	private boolean isAlpha(char c) {
-		return (c >= 'a' && c <= 'z') ||
-			(c >= 'A' && c <= 'Z') ||
-			c == '_';
+		return charClass(c) == ALPHA;
 	}
 
 	private boolean isAlphaNumeric(char c) {
-		return isAlpha(c) || isDigit(c);
+		return charClass(c) != OTHER;
 	}
 
 	private boolean isAtEnd() {
-		return current >= source.length();
+		return !has(current);
 	}
 
-	private void addToken(TokenType type) {
-		addToken(type, null);
+	// a stream can't tell its length before it ends, see `ReaderSource`.
+	private boolean has(int index) {
+		return reader != null ? reader.has(index) : index < source.length();
 	}
 
-	private void addToken(TokenType type, Object literal) {
-		String text = source.substring(start, current);
-		tokens.add(new Token(type, text, literal, line));
+	private void addToken(TokenType type) {
+		// no lexeme, no literal, no object: just four ints.
+		tokens.add(type, start, current - start, line);
 	}
 }
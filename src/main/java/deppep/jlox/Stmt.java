@@ -7,17 +7,19 @@
  *     If -> Expr condition, Stmt thenBranch, Stmt elseBranch;
  *     Print -> Expr expression;
  *     Return -> Token keyword, Expr value;
- *     While -> Expr condition, Stmt body;
+ *     While -> Token keyword, Expr condition, Stmt body;
  *     Break -> Token keyword;
  *     Var -> Token name, Expr initializer;
- * automatically generated with `generate_ast.py` on 26/05/25 20:29.
+ * automatically generated with `generate_ast.py` on 18/10/26 20:50.
 */
 package deppep.jlox;
 
 import java.util.List;
 
 
-abstract class Stmt {
+abstract sealed class Stmt permits
+        Stmt.Block, Stmt.Class, Stmt.Expression, Stmt.Function, Stmt.If,
+        Stmt.Print, Stmt.Return, Stmt.While, Stmt.Break, Stmt.Var {
     interface Visitor<R> {
         R visitBlockStmt(Block expr);
         R visitClassStmt(Class expr);
@@ -31,7 +33,7 @@ abstract class Stmt {
         R visitVarStmt(Var expr);
     }
 
-    static class Block extends Stmt {
+    static final class Block extends Stmt {
         Block(List<Stmt> statements) {
             this.statements=statements;
         }
@@ -44,7 +46,7 @@ abstract class Stmt {
         final List<Stmt> statements;
     }
 
-    static class Class extends Stmt {
+    static final class Class extends Stmt {
         Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
             this.name=name;
             this.superclass=superclass;
@@ -61,7 +63,7 @@ abstract class Stmt {
         final List<Stmt.Function> methods;
     }
 
-    static class Expression extends Stmt {
+    static final class Expression extends Stmt {
         Expression(Expr expression) {
             this.expression=expression;
         }
@@ -74,7 +76,7 @@ abstract class Stmt {
         final Expr expression;
     }
 
-    static class Function extends Stmt {
+    static final class Function extends Stmt {
         Function(Token name, Expr.AnonFunction definition) {
             this.name=name;
             this.definition=definition;
@@ -89,7 +91,7 @@ abstract class Stmt {
         final Expr.AnonFunction definition;
     }
 
-    static class If extends Stmt {
+    static final class If extends Stmt {
         If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
             this.condition=condition;
             this.thenBranch=thenBranch;
@@ -106,7 +108,7 @@ abstract class Stmt {
         final Stmt elseBranch;
     }
 
-    static class Print extends Stmt {
+    static final class Print extends Stmt {
         Print(Expr expression) {
             this.expression=expression;
         }
@@ -119,7 +121,7 @@ abstract class Stmt {
         final Expr expression;
     }
 
-    static class Return extends Stmt {
+    static final class Return extends Stmt {
         Return(Token keyword, Expr value) {
             this.keyword=keyword;
             this.value=value;
@@ -134,8 +136,9 @@ abstract class Stmt {
         final Expr value;
     }
 
-    static class While extends Stmt {
-        While(Expr condition, Stmt body) {
+    static final class While extends Stmt {
+        While(Token keyword, Expr condition, Stmt body) {
+            this.keyword=keyword;
             this.condition=condition;
             this.body=body;
         }
@@ -145,11 +148,12 @@ abstract class Stmt {
             return visitor.visitWhileStmt(this);
         }
 
+        final Token keyword;
         final Expr condition;
         final Stmt body;
     }
 
-    static class Break extends Stmt {
+    static final class Break extends Stmt {
         Break(Token keyword) {
             this.keyword=keyword;
         }
@@ -162,7 +166,7 @@ abstract class Stmt {
         final Token keyword;
     }
 
-    static class Var extends Stmt {
+    static final class Var extends Stmt {
         Var(Token name, Expr initializer) {
             this.name=name;
             this.initializer=initializer;
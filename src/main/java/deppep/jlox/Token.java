@@ -5,12 +5,26 @@ class Token {
 	final TokenType type;
 	final String lexeme;
 	final Object literal;
-	final int line;
+	// read through `line()`, which adds the shift.
+	private final int line;
+	// tokens of a declaration kept by `IncrementalParser` share a shift: when lines are
+	// added or removed above the declaration, its tokens move with one update rather
+	// than a new parse. null for everybody else.
+	private final Shift shift;
+
+	static final class Shift {
+		int lines = 0;
+	}
 
 	Token(TokenType type, String lexeme, Object literal, int line) {
+		this(type, lexeme, literal, line, null);
+	}
+
+	Token(TokenType type, String lexeme, Object literal, int line, Shift shift) {
 		this.type = type;
 		this.lexeme = lexeme;
 		this.literal = literal;
+		this.shift = shift;
 		this.line = line;  // this is for ERROR REPORTING
 		// more sophisticated error reporting will also show the column.
 		// when noting the column is often better to note an `offset` since
@@ -19,6 +33,10 @@ class Token {
 		// and column.
 	}
 
+	int line() {
+		return shift == null ? line : line + shift.lines;
+	}
+
 	public String toString() {
 		return type + " " + lexeme + " " + literal;
 	}
@@ -0,0 +1,188 @@
+package deppep.jlox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// a compact token stream in "structure of arrays" layout. instead of allocating
+// a `Token`, its lexeme `String` and sometimes a boxed literal for every token,
+// we keep four parallel int arrays (type, start offset, length and line) and
+// cut lexemes and literals out of the source only when somebody asks for them.
+// most tokens (think of `;`, `(`, `{`) never get asked, so they never get allocated.
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    // rough size of an array header on a 64bit jvm with compressed oops
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private final CharSequence source;
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int size = 0;
+
+    TokenBuffer(CharSequence source) {
+        this(source, 64);
+    }
+
+    TokenBuffer(CharSequence source, int capacity) {
+        this.source = source;
+        types = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+    }
+
+    void add(TokenType type, int start, int length, int line) {
+        if (size == types.length) grow();
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        size++;
+    }
+
+    // appends all tokens from another buffer over the same source, shifting their lines.
+    void append(TokenBuffer other, int lineOffset) {
+        if (size + other.size > types.length) grow(size + other.size);
+        System.arraycopy(other.types, 0, types, size, other.size);
+        System.arraycopy(other.starts, 0, starts, size, other.size);
+        System.arraycopy(other.lengths, 0, lengths, size, other.size);
+        for (int i = 0; i < other.size; i++) {
+            lines[size + i] = other.lines[i] + lineOffset;
+        }
+        size += other.size;
+    }
+
+    private void grow() {
+        grow(0);
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, Math.max(16, types.length * 2));
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+    }
+
+    // drops all tokens but the last one, which is moved to the front.
+    // this is what lets the streaming scanner use the buffer as a sliding window.
+    void keepLast() {
+        if (size == 0) return;
+        int last = size - 1;
+        types[0] = types[last];
+        starts[0] = starts[last];
+        lengths[0] = lengths[last];
+        lines[0] = lines[last];
+        size = 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    TokenType type(int i) {
+        return TYPES[types[i]];
+    }
+
+    int start(int i) {
+        return starts[i];
+    }
+
+    int length(int i) {
+        return lengths[i];
+    }
+
+    int line(int i) {
+        return lines[i];
+    }
+
+    String lexeme(int i) {
+        return text(starts[i], starts[i] + lengths[i]);
+    }
+
+    private String text(int start, int end) {
+        // a byte source may hold utf-8 in string literals, which needs decoding.
+        if (source instanceof ByteSource bytes) return bytes.decode(start, end);
+        return source.subSequence(start, end).toString();
+    }
+
+    // literals are computed lazily, on the same rules the scanner used to apply eagerly.
+    Object literal(int i) {
+        switch (type(i)) {
+            case TokenType.NUMBER:
+                return Scanner.parseNumber(source, starts[i], starts[i] + lengths[i]);
+            case TokenType.STRING:
+                // trim surrounding quotes.
+                return text(starts[i] + 1, starts[i] + lengths[i] - 1);
+            default:
+                return null;
+        }
+    }
+
+    // materializes the i-th token as a good old object, for whoever needs to keep it
+    // around (e.g. the AST nodes).
+    Token token(int i) {
+        return token(i, null);
+    }
+
+    Token token(int i, Token.Shift shift) {
+        return new Token(type(i), lexeme(i), literal(i), line(i), shift);
+    }
+
+    List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(token(i));
+        }
+        return tokens;
+    }
+
+    // memory footprint of the buffer itself divided by the number of tokens in it.
+    // this is what we want to compare against the ~60-100 bytes of a `Token` object
+    // with its lexeme string and a list slot.
+    double bytesPerToken() {
+        if (size == 0) return 0;
+        long bytes = 4L * (ARRAY_HEADER_BYTES + (long) types.length * Integer.BYTES);
+        return (double) bytes / size;
+    }
+
+    TokenCursor cursor() {
+        return new TokenCursor() {
+            private int current = 0;
+            // a single slot cache, since the parser calls `previous` several times
+            // over the same token and we don't want to materialize it each time.
+            private int cachedIndex = -1;
+            private Token cached;
+
+            @Override
+            public TokenType peekType() {
+                return type(current);
+            }
+
+            @Override
+            public Token peek() {
+                return at(current);
+            }
+
+            @Override
+            public Token previous() {
+                return at(current - 1);
+            }
+
+            @Override
+            public void advance() {
+                current++;
+            }
+
+            private Token at(int i) {
+                if (i != cachedIndex) {
+                    cached = token(i);
+                    cachedIndex = i;
+                }
+                return cached;
+            }
+        };
+    }
+}
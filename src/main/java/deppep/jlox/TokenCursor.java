@@ -0,0 +1,41 @@
+/*
+ * What the parser needs from its input: a look at the current token, the one just
+ * consumed, and a way to move on. `peekType` is there so that the parser can make
+ * most of its decisions without materializing a `Token` object at all.
+ */
+package deppep.jlox;
+
+import java.util.List;
+
+interface TokenCursor {
+    TokenType peekType();
+    Token peek();
+    Token previous();
+    void advance();
+
+    static TokenCursor of(List<Token> tokens) {
+        return new TokenCursor() {
+            private int current = 0;
+
+            @Override
+            public TokenType peekType() {
+                return tokens.get(current).type;
+            }
+
+            @Override
+            public Token peek() {
+                return tokens.get(current);
+            }
+
+            @Override
+            public Token previous() {
+                return tokens.get(current - 1);
+            }
+
+            @Override
+            public void advance() {
+                current++;
+            }
+        };
+    }
+}
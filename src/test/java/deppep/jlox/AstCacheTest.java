@@ -0,0 +1,115 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class AstCacheTest {
+    private static final String SOURCE =
+            "class Counter { init(start) { this.count = start; } next() { this.count = this.count + 1; return this.count; } }\n" +
+            "fun makeAdder(n) { fun add(x) { return x + n; } return add; }\n" +
+            "var counter = Counter(10);\n" +
+            "var add = makeAdder(\"☕ \");\n" +
+            "{ var i = 0; while (true) { i = i + 1; if (i > 2) break; print counter.next(); } }\n" +
+            "print add(counter.count > 11 ? 1.5 : nil == false);\n";
+
+    private static ByteSource source(String text) {
+        return new ByteSource(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String run(Interpreter interpreter, List<Stmt> statements) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+            interpreter.interpret(statements);
+        } finally {
+            System.setOut(out);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    private static List<Stmt> parse(Interpreter interpreter, String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver(interpreter).resolve(statements);
+        return statements;
+    }
+
+    @Test
+    public void testCachedProgramRunsTheSame() throws IOException {
+        Path directory = Files.createTempDirectory("jlox-cache");
+        AstCache cache = new AstCache(directory);
+        String key = AstCache.key(source(SOURCE));
+
+        Interpreter interpreter = new Interpreter();
+        List<Stmt> statements = parse(interpreter, SOURCE);
+        assertNull("Cache should start empty", cache.load(key));
+        cache.store(key, statements);
+        String expected = run(interpreter, statements);
+
+        Interpreter fresh = new Interpreter();
+        List<Stmt> cached = cache.load(key);
+        assertNotNull("Program should be cached", cached);
+        assertEquals(expected, run(fresh, cached));
+        assertEquals("11\n12\n1.5☕ \n", expected);
+    }
+
+    @Test
+    public void testCorruptEntriesAreDropped() throws IOException {
+        Path directory = Files.createTempDirectory("jlox-cache");
+        AstCache cache = new AstCache(directory);
+        String key = AstCache.key(source(SOURCE));
+        Interpreter interpreter = new Interpreter();
+        cache.store(key, parse(interpreter, SOURCE));
+
+        Path entry = directory.resolve(key + ".ast");
+        byte[] bytes = Files.readAllBytes(entry);
+        bytes[bytes.length / 2] ^= 0x5a;
+        Files.write(entry, bytes);
+
+        assertNull("Corrupt entry should not load", cache.load(key));
+        assertFalse("Corrupt entry should be deleted", Files.exists(entry));
+    }
+
+    @Test
+    public void testCorruptLengthIsNotTrusted() throws IOException {
+        Path directory = Files.createTempDirectory("jlox-cache");
+        AstCache cache = new AstCache(directory);
+        String key = AstCache.key(source(SOURCE));
+        Interpreter interpreter = new Interpreter();
+        cache.store(key, parse(interpreter, SOURCE));
+
+        // the body length comes after magic, version and key.
+        Path entry = directory.resolve(key + ".ast");
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(entry));
+        bytes.putInt(4 + 4 + 2 + key.length(), Integer.MAX_VALUE - 8);
+        Files.write(entry, bytes.array());
+
+        assertNull("Entry with a bad length should not load", cache.load(key));
+        assertFalse(Files.exists(entry));
+    }
+
+    @Test
+    public void testKeyDependsOnContent() throws IOException {
+        Path directory = Files.createTempDirectory("jlox-cache");
+        AstCache cache = new AstCache(directory);
+        String key = AstCache.key(source(SOURCE));
+        String other = AstCache.key(source(SOURCE + " "));
+        assertNotEquals(key, other);
+
+        Interpreter interpreter = new Interpreter();
+        cache.store(key, parse(interpreter, SOURCE));
+        // an entry stored under another name is stale.
+        Files.move(directory.resolve(key + ".ast"), directory.resolve(other + ".ast"));
+        assertNull(cache.load(other));
+    }
+}
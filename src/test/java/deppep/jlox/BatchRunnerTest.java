@@ -0,0 +1,53 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class BatchRunnerTest {
+    private static final String SCRIPT =
+            "var count = 0;\n" +
+            "fun bump() { count = count + 1; return count; }\n" +
+            "bump(); bump();\n" +
+            "if (input == \"bad\") print 1 / 0;\n" +
+            "print input + \" \" + bump();\n";
+
+    @Test
+    public void testRunsAreIndependent() throws Exception {
+        Path directory = Files.createTempDirectory("jlox-batch");
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Path input = directory.resolve("input" + i);
+            Files.writeString(input, i == 7 ? "bad" : "input" + i);
+            inputs.add(input);
+        }
+
+        LoxContext context = new LoxContext(new PrintStream(new ByteArrayOutputStream()), System.err);
+        List<Stmt> program = context.parse(SCRIPT, false);
+        assertNotNull(program);
+        List<BatchRunner.Run> runs = new BatchRunner(program, 4).run(inputs);
+
+        assertEquals(20, runs.size());
+        for (int i = 0; i < 20; i++) {
+            BatchRunner.Run run = runs.get(i);
+            assertEquals(inputs.get(i), run.input());
+            if (i == 7) {
+                assertEquals(70, run.status());
+                assertEquals("", run.out());
+                assertEquals("[line 4] Division by zero.\n", run.err());
+            } else {
+                assertEquals(0, run.status());
+                // every run starts from its own globals.
+                assertEquals("input" + i + " 3\n", run.out());
+                assertEquals("", run.err());
+            }
+        }
+    }
+}
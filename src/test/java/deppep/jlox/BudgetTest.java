@@ -0,0 +1,87 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+
+public class BudgetTest {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private final LoxContext context = new LoxContext(
+            new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(err, true, StandardCharsets.UTF_8));
+
+    // runs `source` on a stack as large as jlox's own: the default one of the test
+    // thread may run out before the fuel does.
+    private int runDeep(String source) throws InterruptedException {
+        int[] status = new int[1];
+        Thread thread = new Thread(null, () -> status[0] = context.run(source), "jlox-test", Lox.STACK_SIZE);
+        thread.start();
+        thread.join();
+        return status[0];
+    }
+
+    @Test
+    public void testFuel() throws InterruptedException {
+        context.limitFuel(1000);
+        assertEquals(70, context.run("print \"start\";\nwhile (true) {}"));
+        assertEquals(70, runDeep("fun loop() { loop(); }\nloop();"));
+        // every run gets a full tank.
+        assertEquals(0, context.run("for (var i = 0; i < 900; i = i + 1) {}\nprint \"done\";"));
+        assertEquals(0, context.run("for (var i = 0; i < 900; i = i + 1) {}\nprint \"again\";"));
+        assertEquals("start\ndone\nagain\n", out.toString(StandardCharsets.UTF_8));
+        assertEquals("[line 2] Out of fuel.\n[line 1] Out of fuel.\n", err.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRecursion() {
+        // no fuel limit: the stack runs out first, on whatever thread runs the script.
+        assertEquals(70, context.run("fun f() { f(); }\nf();"));
+        assertEquals("[line 1] Stack overflow.\n", err.toString(StandardCharsets.UTF_8));
+        assertEquals(0, context.run("print \"after\";"));
+        assertEquals("after\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testTimeout() {
+        context.limitTime(Duration.ofMillis(100));
+        long start = System.nanoTime();
+        assertEquals(70, context.run("while (true) {}"));
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        assertEquals("[line 1] Timed out.\n", err.toString(StandardCharsets.UTF_8));
+        assertEquals(0, context.run("print \"quick\";"));
+    }
+
+    @Test
+    public void testMemory() {
+        context.limitMemory(1_000_000);
+        assertEquals(70, context.run("class Point {}\nvar points = 0;\nwhile (true) { var p = Point(); p.x = points; points = points + 1; }"));
+        assertTrue(context.allocated() > 1_000_000);
+        // strings are stopped before they are built.
+        assertEquals(70, context.run("var s = \"lox\";\nwhile (true)\n  s = s\n    + s;"));
+        assertEquals(0, context.run("var s = \"a\" + \"b\";"));
+        assertTrue(context.allocated() > 0 && context.allocated() < 1_000);
+        assertEquals("[line 3] Out of memory.\n[line 4] Out of memory.\n", err.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testInterrupt() throws Exception {
+        Thread interrupter = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+                return;
+            }
+            context.interrupt();
+        });
+        interrupter.start();
+        assertEquals(70, context.run("var i = 0;\nwhile (true) { i = i + 1; }"));
+        interrupter.join();
+        assertEquals("[line 2] Interrupted.\n", err.toString(StandardCharsets.UTF_8));
+    }
+}
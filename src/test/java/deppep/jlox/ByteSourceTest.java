@@ -0,0 +1,46 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class ByteSourceTest {
+    @Test
+    public void testMappedFileMatchesString() throws IOException {
+        String source = "var greeting = \"ciao, città! ☕\";\n/* è */ print greeting + 12.5;";
+        Path path = Files.createTempFile("jlox", ".lox");
+        try {
+            Files.writeString(path, source, StandardCharsets.UTF_8);
+            List<Token> expected = new Scanner(source).scanTokens();
+            List<Token> actual = new Scanner(ByteSource.map(path)).scanTokens();
+
+            assertEquals("Number of tokens doesn't match", expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals("Token type mismatch at position " + i, expected.get(i).type, actual.get(i).type);
+                assertEquals("Lexeme mismatch at position " + i, expected.get(i).lexeme, actual.get(i).lexeme);
+                assertEquals("Literal mismatch at position " + i, expected.get(i).literal, actual.get(i).literal);
+                assertEquals("Line mismatch at position " + i, expected.get(i).line(), actual.get(i).line());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testDecodesStringLiterals() {
+        byte[] bytes = "\"☕\"".getBytes(StandardCharsets.UTF_8);
+        ByteSource source = new ByteSource(ByteBuffer.wrap(bytes));
+
+        assertEquals("One char per byte", bytes.length, source.length());
+        List<Token> tokens = new Scanner(source).scanTokens();
+        assertEquals(TokenType.STRING, tokens.get(0).type);
+        assertEquals("☕", tokens.get(0).literal);
+    }
+}
@@ -0,0 +1,67 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class FastCallTest {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private final LoxContext context = new LoxContext(
+            new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(err, true, StandardCharsets.UTF_8));
+
+    @Test
+    public void testEveryArity() {
+        assertEquals(0, context.run(
+                "fun zero() { return \"z\"; }\n" +
+                "fun one(a) { return a; }\n" +
+                "fun two(a, b) { return a + b; }\n" +
+                "fun three(a, b, c) { return a + b + c; }\n" +
+                "fun five(a, b, c, d, e) { return a + b + c + d + e; }\n" +
+                "print zero() + one(\"o\") + two(\"t\", \"w\") + three(\"t\", \"h\", \"r\") + five(\"f\", \"i\", \"v\", \"e\", \"!\");\n" +
+                "class Point { init(x, y) { this.x = x; this.y = y; } }\n" +
+                "var p = Point(1, 2);\n" +
+                "print p.x + p.y;\n" +
+                // arguments are evaluated left to right.
+                "var log = \"\";\n" +
+                "fun note(s) { log = log + s; return s; }\n" +
+                "five(note(\"1\"), note(\"2\"), note(\"3\"), note(\"4\"), note(\"5\"));\n" +
+                "two(note(\"a\"), note(\"b\"));\n" +
+                "print log;\n"));
+        assertEquals("zotwthrfive!\n3\n12345ab\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDefaultEntryPointsGoThroughCall() {
+        LoxCallable sum = new LoxCallable() {
+            @Override
+            public int arity() {
+                return 2;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                return (double) arguments.get(0) + (double) arguments.get(1);
+            }
+        };
+        assertEquals(3.0, sum.call2(null, 1.0, 2.0));
+        assertEquals(3.0, sum.callN(null, new Object[] {1.0, 2.0}));
+        context.interpreter().globals.define("sum", sum);
+        assertEquals(0, context.run("print sum(1, 2) + clock() * 0;"));
+        assertEquals("3\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testArityErrors() {
+        assertEquals(70, context.run("fun f(a, b, c, d) { return a + b + c + d; }\nf(1, 2, 3);"));
+        assertEquals(70, context.run("class C { init(a) { this.a = a; } }\nC();"));
+        assertEquals("[line 2] Expected 4 arguments but got 3.\n" +
+                "[line 2] Expected 1 arguments but got 0.\n", err.toString(StandardCharsets.UTF_8));
+    }
+}
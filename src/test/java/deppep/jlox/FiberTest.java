@@ -0,0 +1,82 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+
+public class FiberTest {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private final LoxContext context = new LoxContext(
+            new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(err, true, StandardCharsets.UTF_8));
+
+    @Test
+    public void testJoinReturnsTheResult() {
+        assertEquals(0, context.run(
+                "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+                "var a = spawn(fun () { return fib(15); });\n" +
+                "var b = spawn(fun () { return fib(16); });\n" +
+                "print join(a) + join(b);\n" +
+                "print spawn(fun () {});\n"));
+        assertEquals("1597\n<fiber>\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testChannels() {
+        // bounded channels: producers block until consumers catch up. reading a nil
+        // variable is an error in this lox, hence the -1 closing the stream.
+        assertEquals(0, context.run(
+                "var numbers = channel(2);\n" +
+                "var squares = channel(2);\n" +
+                "var producer = spawn(fun () { for (var i = 1; i <= 10; i = i + 1) send(numbers, i); send(numbers, -1); });\n" +
+                "var squarer = spawn(fun () {\n" +
+                "  var n = receive(numbers);\n" +
+                "  while (n != -1) { send(squares, n * n); n = receive(numbers); }\n" +
+                "  send(squares, -1);\n" +
+                "});\n" +
+                "var sum = 0;\n" +
+                "var square = receive(squares);\n" +
+                "while (square != -1) { sum = sum + square; square = receive(squares); }\n" +
+                "join(producer);\n" +
+                "join(squarer);\n" +
+                "print sum;\n" +
+                "var c = channel(1);\n" +
+                "send(c, nil);\n" +
+                "print receive(c) == nil;\n"));
+        assertEquals("385\ntrue\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFibersShareGlobals() {
+        assertEquals(0, context.run(
+                "var done = channel(1);\n" +
+                "var seen = \"main\";\n" +
+                "var f = spawn(fun () { seen = \"fiber\"; send(done, true); });\n" +
+                "receive(done);\n" +
+                "print seen;\n" +
+                "join(f);\n"));
+        assertEquals("fiber\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testErrors() {
+        assertEquals(70, context.run("var f = spawn(fun () {\n print 1 / 0; });\nprint \"joining\";\njoin(f);"));
+        assertEquals("joining\n", out.toString(StandardCharsets.UTF_8));
+        assertEquals("[line 2] Division by zero.\n", err.toString(StandardCharsets.UTF_8));
+
+        err.reset();
+        assertEquals(70, context.run("spawn(fun (a) { return a; });"));
+        assertEquals(70, context.run("join(1);"));
+        assertEquals(70, context.run("channel(0);"));
+        assertEquals(70, context.run("send(nil, 1);"));
+        assertEquals("[line 1] Can only spawn functions taking no arguments.\n" +
+                "[line 1] Can only join fibers.\n" +
+                "[line 1] Channel capacity must be a positive integer.\n" +
+                "[line 1] Expect a channel.\n", err.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,86 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class FlatAstTest {
+    private static final String SOURCE =
+            "class Counter { init(start) { this.count = start; } next() { this.count = this.count + 1; return this.count; } }\n" +
+            "fun makeAdder(n) { fun add(x) { return x + n; } return add; }\n" +
+            "var counter = Counter(10);\n" +
+            "var add = makeAdder(\"☕ \");\n" +
+            "{ var i = 0; while (true) { i = i + 1; if (i > 2) break; print counter.next(); } }\n" +
+            "print add(counter.count > 11 ? 1.5 : nil == false);\n" +
+            "var square = fun (x) { return x * x; };\n" +
+            "print square(3) - 1, square;\n" +
+            "print makeAdder;\n";
+
+    private static List<Stmt> parse(Interpreter interpreter, String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver(interpreter).resolve(statements);
+        return statements;
+    }
+
+    private static String capture(Runnable program) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+            program.run();
+        } finally {
+            System.setOut(out);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testFlatProgramRunsTheSame() {
+        Interpreter interpreter = new Interpreter();
+        List<Stmt> statements = parse(interpreter, SOURCE);
+        FlatAst ast = FlatAst.encode(statements);
+
+        String flat = capture(() -> new FlatInterpreter(ast).interpret());
+        String tree = capture(() -> interpreter.interpret(statements));
+        assertEquals(tree, flat);
+        assertEquals("11\n12\n1.5☕ \n<fn anonymous>\n<fn makeAdder>\n", flat);
+    }
+
+    @Test
+    public void testRuntimeErrorsKeepTheirLine() {
+        Interpreter interpreter = new Interpreter();
+        FlatAst ast = FlatAst.encode(parse(interpreter, "var a = 1;\n\nprint a / 0;\n"));
+        FlatInterpreter flat = new FlatInterpreter(ast);
+        flat.execute(ast.listElement(ast.program(), 0));
+        RuntimeError error = assertThrows(RuntimeError.class, () -> flat.execute(ast.listElement(ast.program(), 1)));
+        assertEquals(3, error.token.line());
+        assertEquals("Division by zero.", error.getMessage());
+    }
+
+    @Test
+    public void testLinesPastTheHeaderAreClamped() {
+        Interpreter interpreter = new Interpreter();
+        List<Stmt> statements = new Parser(new Scanner("var a = 1;\nprint a / 0;\n").stream(0, 1 << 24)).parse();
+        new Resolver(interpreter).resolve(statements);
+        FlatAst ast = FlatAst.encode(statements);
+        assertEquals(FlatAst.MAX_LINE, ast.line(ast.listElement(ast.program(), 0)));
+        FlatInterpreter flat = new FlatInterpreter(ast);
+        flat.execute(ast.listElement(ast.program(), 0));
+        RuntimeError error = assertThrows(RuntimeError.class, () -> flat.execute(ast.listElement(ast.program(), 1)));
+        assertEquals(FlatAst.MAX_LINE, error.token.line());
+    }
+
+    @Test
+    public void testNodesAreCompact() {
+        Interpreter interpreter = new Interpreter();
+        FlatAst ast = FlatAst.encode(parse(interpreter, SOURCE));
+        assertTrue("Got " + ast.size(), ast.size() > 50);
+        // four ints per node, plus lists.
+        assertTrue("Got " + ast.bytesPerNode(), ast.bytesPerNode() < 24);
+    }
+}
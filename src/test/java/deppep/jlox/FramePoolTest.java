@@ -0,0 +1,83 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class FramePoolTest {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final LoxContext context = new LoxContext(
+            new PrintStream(out, true, StandardCharsets.UTF_8), System.err);
+
+    private static Expr.AnonFunction function(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).stream()).parse();
+        return ((Stmt.Function) statements.get(0)).definition;
+    }
+
+    @Test
+    public void testEscapeAnalysis() {
+        assertFalse(EscapeAnalysis.escapes(function("fun f(a) { var b = a * 2; if (b > 1) return b; return a; }")));
+        assertFalse(EscapeAnalysis.escapes(function("fun f(o) { o.x = o.y; return this; }")));
+        assertTrue(EscapeAnalysis.escapes(function("fun f() { fun g() {} return g; }")));
+        assertTrue(EscapeAnalysis.escapes(function("fun f() { while (true) { print fun () {}; } }")));
+        assertTrue(EscapeAnalysis.escapes(function("fun f() { class C {} }")));
+    }
+
+    @Test
+    public void testLeafCallsAllocateNoFrames() {
+        assertEquals(0, context.run(
+                "fun add(a, b) { return a + b; }\n" +
+                "var i = 0;\n" +
+                "while (i < 10000) i = add(i, 1);\n" +
+                "print i;"));
+        // a frame for the first call, none after.
+        assertTrue(context.allocated() < 1000);
+    }
+
+    @Test
+    public void testCapturedFramesAreNotRecycled() {
+        assertEquals(0, context.run(
+                "fun counter(n) { var count = n; fun next() { count = count + 1; return count; } print count; return next; }\n" +
+                "fun leaf(x) { var y = x; return y; }\n" +
+                "var a = counter(10);\n" +
+                "var b = counter(20);\n" +
+                "leaf(1); leaf(2);\n" +
+                "print a(); print b(); print a();"));
+        assertEquals("10\n20\n11\n21\n12\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testNewFramesAccountTheirParameters() {
+        assertEquals(0, context.run(
+                "fun make(a, b, c) { fun g() {} if (a + b + c > 0) return g; return nil; }\n" +
+                "var i = 0;\n" +
+                "while (i < 100) { make(1, 2, 3); i = i + 1; }"));
+        // frames which escape are new at every call, and so are their parameters.
+        assertTrue(context.allocated() >= 100 * (Budget.ENVIRONMENT + 3 * Budget.VARIABLE));
+    }
+
+    @Test
+    public void testPoisonedFramesFailLoudly() {
+        Environment frame = new Environment(new Environment());
+        frame.define("a", 1.0);
+        Environment block = new Environment(frame);
+        frame.poison();
+        try {
+            block.getAt(1, "a");
+            fail();
+        } catch (IllegalStateException expected) {
+            // a stale reference to the frame.
+        }
+        try {
+            block.getAt(3, "a");
+            fail();
+        } catch (IllegalStateException expected) {
+            // looking past it.
+        }
+    }
+}
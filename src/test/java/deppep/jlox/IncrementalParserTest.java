@@ -0,0 +1,84 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class IncrementalParserTest {
+    private static String source(int functions) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            source.append("fun f").append(i).append("(a) { var b = a + ").append(i).append("; return b; }\n");
+        }
+        return source.toString();
+    }
+
+    private static Object call(Interpreter interpreter, List<Stmt> statements, String call) {
+        interpreter.interpret(statements);
+        List<Stmt> stmts = new Parser(new Scanner(call).scanTokens()).parse();
+        return interpreter.evaluate(((Stmt.Expression) stmts.getFirst()).expression);
+    }
+
+    @Test
+    public void testEditReusesUntouchedDeclarations() {
+        Interpreter interpreter = new Interpreter();
+        IncrementalParser parser = new IncrementalParser(interpreter, source(200));
+        List<Stmt> before = parser.statements();
+        assertEquals(200, before.size());
+
+        int offset = parser.source().indexOf("a + 100;");
+        parser.edit(offset + 2, 1, "*");
+        List<Stmt> after = parser.statements();
+
+        assertEquals("Only the edited declaration should be parsed", 1, parser.reparsed());
+        assertEquals(200, after.size());
+        for (int i = 0; i < after.size(); i++) {
+            if (i == 100) {
+                assertNotSame("Edited declaration should be new", before.get(i), after.get(i));
+            } else {
+                assertSame("Declaration " + i + " should be reused", before.get(i), after.get(i));
+            }
+        }
+        assertEquals(200.0, call(interpreter, after, "f100(2);"));
+        assertEquals(101.0, call(interpreter, after, "f99(2);"));
+    }
+
+    @Test
+    public void testEditAddingLinesShiftsTheRest() {
+        IncrementalParser parser = new IncrementalParser(new Interpreter(), source(10));
+        List<Stmt> before = parser.statements();
+        int offset = parser.source().indexOf("return b; }\nfun f5");
+        parser.edit(offset, 0, "\n");
+
+        // only the edited declaration: the following ones moved one line down, and
+        // are reused with their lines shifted.
+        assertEquals(1, parser.reparsed());
+        List<Stmt> after = parser.statements();
+        assertEquals(10, after.size());
+        assertSame(before.get(9), after.get(9));
+        assertEquals(11, ((Stmt.Function) after.get(9)).name.line());
+        assertEquals(4, ((Stmt.Function) after.get(3)).name.line());
+
+        // and back up one, joining the first two declarations on a single line.
+        parser.edit(0, parser.source().indexOf("fun f2"), "fun f0(a) { return a; } fun f1(a) { return a; }\n");
+        assertEquals(2, parser.reparsed());
+        assertEquals(10, ((Stmt.Function) parser.statements().get(9)).name.line());
+        assertEquals(1, ((Stmt.Function) parser.statements().get(1)).name.line());
+    }
+
+    @Test
+    public void testEditChangingStructure() {
+        IncrementalParser parser = new IncrementalParser(new Interpreter(), source(10));
+        int offset = parser.source().indexOf("fun f5");
+        // commenting everything from here on.
+        parser.edit(offset, 0, "/*");
+        assertEquals(5, parser.statements().size());
+
+        // and back.
+        parser.edit(offset, 2, "");
+        assertEquals(10, parser.statements().size());
+        assertEquals(source(10), parser.source());
+    }
+}
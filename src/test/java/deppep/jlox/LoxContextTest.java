@@ -0,0 +1,83 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+
+public class LoxContextTest {
+    private static class Captured {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final LoxContext context = new LoxContext(
+                new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testContextsAreIsolated() {
+        Captured first = new Captured();
+        Captured second = new Captured();
+        assertEquals(0, first.context.run("var a = \"first\";"));
+        assertEquals(0, second.context.run("var a = \"second\";"));
+        assertEquals(0, first.context.run("print a;"));
+        assertEquals(0, second.context.run("print a;"));
+        assertEquals("first\n", first.out.toString(StandardCharsets.UTF_8));
+        assertEquals("second\n", second.out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testErrorsStayInTheirContext() {
+        Captured syntax = new Captured();
+        Captured runtime = new Captured();
+        Lox.hadError = false;
+        Lox.hadRuntimeError = false;
+
+        assertEquals(65, syntax.context.run("print ;"));
+        assertTrue(syntax.context.hadError());
+        assertEquals("[line 1] Error at ';': Expect expression\n", syntax.err.toString(StandardCharsets.UTF_8));
+
+        assertEquals(70, runtime.context.run("print 1 / 0;"));
+        assertTrue(runtime.context.hadRuntimeError());
+        assertEquals("[line 1] Division by zero.\n", runtime.err.toString(StandardCharsets.UTF_8));
+
+        assertFalse(Lox.hadError);
+        assertFalse(Lox.hadRuntimeError);
+        // and they are forgotten on the next run.
+        assertEquals(0, syntax.context.run("print 1;"));
+    }
+
+    @Test
+    public void testContextsRunConcurrently() throws Exception {
+        String source = "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+                "var total = 0;\n" +
+                "for (var i = 0; i < 20; i = i + 1) total = total + fib(i) * id;\n" +
+                "print total;\n";
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int id = 0; id < 16; id++) {
+                String program = "var id = " + id + ";\n" + source;
+                results.add(pool.submit(() -> {
+                    Captured captured = new Captured();
+                    assertEquals(0, captured.context.run(program));
+                    return captured.out.toString(StandardCharsets.UTF_8);
+                }));
+            }
+            for (int id = 0; id < 16; id++) {
+                // the sum of the first 20 fibonacci numbers is 10945.
+                assertEquals((10945 * id) + "\n", results.get(id).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+
+public class LoxDaemonTest {
+    @Test
+    public void testScriptsRunOnTheDaemon() throws Exception {
+        Path directory = Files.createTempDirectory("jlox-daemon");
+        Path socket = directory.resolve("jlox.sock");
+        Thread daemon = new Thread(() -> {
+            try {
+                LoxDaemon.serve(socket);
+            } catch (Exception error) {
+                // the test fails on connecting.
+            }
+        });
+        daemon.setDaemon(true);
+        daemon.start();
+        // the socket file shows up on bind, a bit before the daemon listens.
+        for (int i = 0; ; i++) {
+            try {
+                SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+                break;
+            } catch (IOException error) {
+                if (i == 100) throw error;
+                Thread.sleep(20);
+            }
+        }
+
+        Path ok = directory.resolve("ok.lox");
+        Files.writeString(ok, "var a = \"☕\"; print a;");
+        Path failing = directory.resolve("failing.lox");
+        Files.writeString(failing, "print \"before\";\nprint a;");
+        Path broken = directory.resolve("broken.lox");
+        Files.writeString(broken, "print ;");
+
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+            System.setErr(new PrintStream(errors, true, StandardCharsets.UTF_8));
+            assertEquals(0, LoxDaemon.connect(socket, ok.toString()));
+            // a fresh context: `a` is gone.
+            assertEquals(70, LoxDaemon.connect(socket, failing.toString()));
+            assertEquals(65, LoxDaemon.connect(socket, broken.toString()));
+            assertEquals(66, LoxDaemon.connect(socket, directory.resolve("missing.lox").toString()));
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+
+        assertEquals("☕\nbefore\n", output.toString(StandardCharsets.UTF_8));
+        assertEquals("[line 2] Undefined variable 'a'.\n" +
+                "[line 1] Error at ';': Expect expression\n" +
+                "Can't read " + directory.resolve("missing.lox") + ".\n", errors.toString(StandardCharsets.UTF_8));
+
+        // however a script fails, the client gets an exit status, and the daemon lives on.
+        Path deep = directory.resolve("deep.lox");
+        Files.writeString(deep, "fun f() { f(); }\nf();");
+        try {
+            System.setOut(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+            System.setErr(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+            assertEquals(70, LoxDaemon.connect(socket, deep.toString()));
+            assertEquals(0, LoxDaemon.connect(socket, ok.toString()));
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+
+        // lengths which can't be right are refused, with an answer all the same.
+        assertEquals("Bad request.\n65", request(socket, LoxDaemon.SOURCE, -1));
+        assertEquals("Bad request.\n65", request(socket, LoxDaemon.FILE, Integer.MAX_VALUE));
+        assertEquals(0, LoxDaemon.connect(socket, ok.toString()));
+    }
+
+    // sends a request with no payload but its length, and returns what went to the
+    // client's stderr followed by the exit status.
+    private static String request(Path socket, byte kind, int length) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+             DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+             DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel))) {
+            out.writeByte(kind);
+            out.writeInt(length);
+            out.flush();
+            StringBuilder errors = new StringBuilder();
+            while (true) {
+                byte frame = in.readByte();
+                if (frame == LoxDaemon.EXIT) return errors.toString() + in.readInt();
+                String text = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+                if (frame == LoxDaemon.ERR) errors.append(text);
+            }
+        }
+    }
+}
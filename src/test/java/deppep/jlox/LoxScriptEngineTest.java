@@ -0,0 +1,101 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+
+public class LoxScriptEngineTest {
+    private final ScriptEngine engine = new ScriptEngineManager().getEngineByName("lox");
+
+    @Test
+    public void testEval() throws Exception {
+        assertNotNull(engine);
+        StringWriter out = new StringWriter();
+        engine.getContext().setWriter(out);
+        engine.put("n", 20);
+        assertEquals(40.0, engine.eval("print \"hello\"; n * 2;"));
+        assertNull(engine.eval("var doubled = n * 2;"));
+        // globals defined by scripts land in the engine bindings.
+        assertEquals(40.0, engine.get("doubled"));
+        assertEquals("hello\n", out.toString());
+    }
+
+    @Test
+    public void testCompiledScriptsRunWithDifferentBindings() throws Exception {
+        CompiledScript script = ((Compilable) engine).compile(
+                "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+                "var result = fib(n);\n" +
+                "result + 1;");
+        for (int n = 0; n < 10; n++) {
+            Bindings bindings = engine.createBindings();
+            bindings.put("n", n);
+            script.eval(bindings);
+            assertEquals(fib(n), bindings.get("result"));
+        }
+        Bindings bindings = engine.createBindings();
+        bindings.put("n", 15);
+        assertEquals(611.0, script.eval(bindings));
+    }
+
+    @Test
+    public void testRunsStartFromFreshGlobals() throws Exception {
+        CompiledScript script = ((Compilable) engine).compile("var count = 1; clock = 2; count;");
+        assertEquals(1.0, script.eval(engine.createBindings()));
+        Bindings bindings = engine.createBindings();
+        script.eval(bindings);
+        assertEquals(2.0, bindings.get("clock"));
+        // the native is back for the next run.
+        assertTrue(engine.eval("clock();") instanceof Double);
+    }
+
+    @Test
+    public void testOnlyChangedValuesAreWrittenBack() throws Exception {
+        engine.getBindings(ScriptContext.GLOBAL_SCOPE).put("shared", "global");
+        engine.put("n", 20);
+        engine.put("m", 1);
+        engine.eval("m = m + 1; var s = \"lox\"; var nothing = nil; fun f() { return 1; } class C {} var c = C();");
+        Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+        // untouched inputs keep their java value, and the global scope stays there.
+        assertEquals(20, bindings.get("n"));
+        assertFalse(bindings.containsKey("shared"));
+        assertEquals(2.0, bindings.get("m"));
+        assertEquals("lox", bindings.get("s"));
+        assertTrue(bindings.containsKey("nothing"));
+        assertNull(bindings.get("nothing"));
+        // callables and instances belong to the session which ran them.
+        assertFalse(bindings.containsKey("f"));
+        assertFalse(bindings.containsKey("C"));
+        assertFalse(bindings.containsKey("c"));
+    }
+
+    @Test
+    public void testErrors() {
+        try {
+            engine.eval("print ;");
+            fail();
+        } catch (ScriptException error) {
+            assertEquals("[line 1] Error at ';': Expect expression", error.getMessage());
+        }
+        try {
+            engine.eval("\n1 / 0;");
+            fail();
+        } catch (ScriptException error) {
+            assertEquals("[line 2] Division by zero.", error.getMessage());
+        }
+        assertFalse(Lox.hadError);
+        assertFalse(Lox.hadRuntimeError);
+    }
+
+    private static double fib(int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+}
@@ -0,0 +1,105 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class NestingTest {
+    private static String errors(String source, int maxDepth, List<Stmt> statements) {
+        PrintStream err = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setErr(new PrintStream(errors));
+            statements.addAll(new Parser(TokenCursor.of(new Scanner(source).scanTokens()), maxDepth).parse());
+        } finally {
+            System.setErr(err);
+            Lox.hadError = false;
+        }
+        return errors.toString();
+    }
+
+    @Test
+    public void testNestingWithinLimitParses() {
+        String source = "print " + "(".repeat(40) + "1" + ")".repeat(40) + ";\n" +
+                "{".repeat(40) + "print 1;" + "}".repeat(40) + "\n" +
+                // flat chains are cheap, a few links count as one level.
+                "print 1" + " + 1".repeat(300) + ";\n";
+        List<Stmt> statements = new ArrayList<>();
+        assertEquals("", errors(source, 100, statements));
+        assertEquals(3, statements.size());
+    }
+
+    @Test
+    public void testNestingPastLimitIsAnError() {
+        String[] sources = {
+                "print " + "(".repeat(200) + "1" + ")".repeat(200) + ";",
+                "{".repeat(200) + "print 1;" + "}".repeat(200),
+                "print " + "false ? 0 : ".repeat(200) + "1;",
+                "print 1" + " + 1".repeat(1000) + ";",
+                "var f = " + "fun () { return ".repeat(200) + "1" + "; }".repeat(200) + ";",
+        };
+        for (String source : sources) {
+            List<Stmt> statements = new ArrayList<>();
+            String errors = errors(source + "\nprint 2;", 100, statements);
+            // one error, and parsing stops there.
+            assertTrue(errors, errors.startsWith("[line 1] Error at "));
+            assertTrue(errors, errors.endsWith(": Too deeply nested.\n"));
+            assertEquals(errors, 1, errors.lines().count());
+            assertEquals(1, statements.size());
+        }
+    }
+
+    // through a context on an ordinary thread, as embedders do: within `maxDepth`, but
+    // with less stack than `Lox.STACK_SIZE`.
+    private static String[] contexts(int stackSize) throws InterruptedException {
+        String[] sources = {
+                "{".repeat(1800) + "print 1;" + "}".repeat(1800),
+                "print " + "(".repeat(1800) + "1" + ")".repeat(1800) + ";",
+        };
+        String[] results = new String[sources.length];
+        Thread thread = new Thread(null, () -> {
+            for (int i = 0; i < sources.length; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ByteArrayOutputStream err = new ByteArrayOutputStream();
+                int status = new LoxContext(new PrintStream(out), new PrintStream(err)).run(sources[i] + "\nprint 2;");
+                results[i] = status + " " + out + err;
+            }
+        }, "embedder", stackSize);
+        thread.start();
+        thread.join();
+        return results;
+    }
+
+    @Test
+    public void testRunningOutOfStackIsAnError() throws InterruptedException {
+        for (String result : contexts(64 * 1024)) {
+            assertNotNull(result);
+            assertTrue(result, result.startsWith("65 [line 1] Error "));
+            assertTrue(result, result.endsWith(": Too deeply nested.\n"));
+            assertEquals(result, 1, result.lines().count());
+        }
+        // with the default stack it may fit, or not: either way no stack overflow gets out.
+        for (String result : contexts(0)) {
+            assertNotNull(result);
+            assertTrue(result, result.equals("0 1\n2\n") || result.endsWith(": Too deeply nested.\n"));
+        }
+    }
+
+    @Test
+    public void testPrinterIsNotLimitedByTheStack() {
+        Token minus = new Token(TokenType.MINUS, "-", null, 1);
+        Expr expr = new Expr.Literal(1.0);
+        for (int i = 0; i < 100_000; i++) {
+            expr = i % 2 == 0 ? new Expr.Grouping(expr) : new Expr.Unary(minus, expr);
+        }
+        String printed = new AstPrinter().print(expr);
+        assertTrue(printed.startsWith("(- (group (- (group"));
+        assertTrue(printed.contains("(- (group 1.0))"));
+        assertEquals(100_000, printed.length() - printed.replace(")", "").length());
+    }
+}
@@ -0,0 +1,55 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+
+public class OutputTest {
+    @Test
+    public void testOutputComesBeforeErrors() {
+        // both streams into one, to see the order they were written in.
+        ByteArrayOutputStream both = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(both, true, StandardCharsets.UTF_8);
+        LoxContext context = new LoxContext(stream, stream);
+        assertEquals(70, context.run("print \"one\";\nprint \"two\";\nprint missing;"));
+        assertEquals(65, context.run("print \"three\";\nprint ;"));
+        assertEquals(0, context.run("var f = spawn(fun () { print \"fiber\"; return 0; });\nprint join(f);"));
+        assertEquals("one\ntwo\n[line 3] Undefined variable 'missing'.\n" +
+                "[line 2] Error at ';': Expect expression\n" +
+                "fiber\n0\n", both.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testLongAndNonAsciiLines() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Output output = new Output(out);
+        output.println("caffè ☕");
+        String line = "x".repeat(200_000);
+        output.println(line);
+        output.println("é".repeat(100_000));
+        output.println("end");
+        output.flush();
+        assertEquals("caffè ☕\n" + line + "\n" + "é".repeat(100_000) + "\nend\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFileChannel() throws Exception {
+        Path file = Files.createTempFile("jlox-output", ".txt");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            LoxContext context = new LoxContext(channel, new PrintStream(err, true, StandardCharsets.UTF_8));
+            assertEquals(0, context.run("for (var i = 0; i < 3; i = i + 1) print i;"));
+            assertEquals("", err.toString(StandardCharsets.UTF_8));
+        }
+        assertEquals("0\n1\n2\n", Files.readString(file));
+        Files.delete(file);
+    }
+}
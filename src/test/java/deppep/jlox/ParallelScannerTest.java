@@ -0,0 +1,53 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.*;
+
+
+public class ParallelScannerTest {
+    // lots of strings and block comments spanning lines, so that some of them
+    // will surely cross chunk boundaries. plus some errors.
+    private static String source() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            source.append("var a").append(i).append(" = ").append(i).append(".5;\n");
+            if (i % 7 == 0) source.append("print \"multi\nline\n\nstring ").append(i).append("\";\n");
+            if (i % 11 == 0) source.append("/* a\n/* nested */\nblock comment */\n");
+            if (i % 13 == 0) source.append("// a line comment with a \" quote\n");
+            if (i % 997 == 0) source.append("@\n");
+        }
+        source.append("\"unterminated\nstring");
+        return source.toString();
+    }
+
+    @Test
+    public void testSameTokensAndErrorsAsSequential() {
+        String source = source();
+        PrintStream err = System.err;
+        ByteArrayOutputStream sequentialErrors = new ByteArrayOutputStream();
+        ByteArrayOutputStream parallelErrors = new ByteArrayOutputStream();
+        TokenBuffer expected;
+        TokenBuffer actual;
+        try {
+            System.setErr(new PrintStream(sequentialErrors));
+            expected = new Scanner(source).scanBuffer();
+            System.setErr(new PrintStream(parallelErrors));
+            actual = new ParallelScanner(source, 16).scanBuffer();
+        } finally {
+            System.setErr(err);
+            Lox.hadError = false;
+        }
+
+        assertEquals("Errors don't match", sequentialErrors.toString(), parallelErrors.toString());
+        assertEquals("Number of tokens doesn't match", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Token type mismatch at position " + i, expected.type(i), actual.type(i));
+            assertEquals("Start mismatch at position " + i, expected.start(i), actual.start(i));
+            assertEquals("Length mismatch at position " + i, expected.length(i), actual.length(i));
+            assertEquals("Line mismatch at position " + i, expected.line(i), actual.line(i));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+
+public class ParallelTest {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private final LoxContext context = new LoxContext(
+            new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(err, true, StandardCharsets.UTF_8));
+
+    @Test
+    public void testMapAndReduce() {
+        assertEquals(0, context.run(
+                "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+                "var fibs = parallelMap(0, 20, fib);\n" +
+                "print fibs(0) + fibs(10) + fibs(19);\n" +
+                "print parallelReduce(1, 1001, fun (i) { return i; }, fun (a, b) { return a + b; });\n" +
+                // results are combined in order: strings concatenate as the range goes.
+                "print parallelReduce(0, 300, fun (i) { return i; }, fun (a, b) { return a + \",\" + b; }) == " +
+                "parallelReduce(0, 300, fun (i) { return \"\" + i; }, fun (a, b) { return a + \",\" + b; });\n" +
+                "print parallelReduce(5, 5, fun (i) { return i; }, fun (a, b) { return a + b; }) == nil;\n"));
+        assertEquals("4236\n500500\ntrue\ntrue\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testForWritesFields() {
+        // what a worker wrote is visible once `parallelFor` returns.
+        assertEquals(0, context.run(
+                "class Box {}\n" +
+                "var box = Box();\n" +
+                "parallelFor(0, 500, fun (i) { if (i == 499) box.last = i; });\n" +
+                "print box.last;\n"));
+        assertEquals("499\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testErrors() {
+        assertEquals(70, context.run("parallelFor(0, 100, fun (i) { if (i == 42) print 1 / 0; });"));
+        assertEquals(70, context.run("parallelMap(0, 1.5, fun (i) { return i; });"));
+        assertEquals(70, context.run("parallelReduce(0, 10, fun (i) { return i; }, fun (a) { return a; });"));
+        assertEquals(70, context.run("parallelMap(0, 2, fun (i) { return i; })(2);"));
+        assertEquals("[line 1] Division by zero.\n" +
+                "[line 1] Range bounds must be integers.\n" +
+                "[line 1] Expect a function taking 2 arguments.\n" +
+                "[line 1] Index out of range.\n", err.toString(StandardCharsets.UTF_8));
+    }
+}
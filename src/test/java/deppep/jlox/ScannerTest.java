@@ -1,6 +1,7 @@
 package deppep.jlox;
 
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -42,4 +43,73 @@ public class ScannerTest {
                 token.literal);
         }
     }
+
+    @Test
+    public void testStreamingMatchesScanTokens() {
+        String source = "var a = \"hello\";\nprint a + 12.5; /* block\ncomment */ a = a >= 1;";
+        List<Token> tokens = new Scanner(source).scanTokens();
+        TokenCursor stream = new Scanner(source).stream();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            assertEquals("Token type mismatch at position " + i, token.type, stream.peekType());
+            assertEquals("Lexeme mismatch at position " + i, token.lexeme, stream.peek().lexeme);
+            assertEquals("Literal mismatch at position " + i, token.literal, stream.peek().literal);
+            assertEquals("Line mismatch at position " + i, token.line(), stream.peek().line());
+            if (i > 0) assertEquals("Previous mismatch at position " + i, tokens.get(i - 1).lexeme, stream.previous().lexeme);
+            if (token.type != TokenType.EOF) stream.advance();
+        }
+    }
+
+    @Test
+    public void testParserOverStream() {
+        String input = "1.0 ? 2.0 : 3.0 ? 4.0 : 5.0;";
+        List<Stmt> stmts = new Parser(new Scanner(input).stream()).parse();
+        Expr expr = ((Stmt.Expression)stmts.getFirst()).expression;
+
+        assertEquals("(?: 1.0 2.0 (?: 3.0 4.0 5.0))", new AstPrinter().print(expr));
+    }
+
+    @Test
+    public void testKeywords() {
+        String source = "and break class else false for fun if nil or print return super this true var while " +
+                "an andy f fa fort funny t th thi truth _var While";
+        List<Token> tokens = new Scanner(source).scanTokens();
+
+        TokenType[] expectedTypes = {
+            TokenType.AND, TokenType.BREAK, TokenType.CLASS, TokenType.ELSE, TokenType.FALSE,
+            TokenType.FOR, TokenType.FUN, TokenType.IF, TokenType.NIL, TokenType.OR,
+            TokenType.PRINT, TokenType.RETURN, TokenType.SUPER, TokenType.THIS, TokenType.TRUE,
+            TokenType.VAR, TokenType.WHILE,
+        };
+
+        for (int i = 0; i < expectedTypes.length; i++) {
+            assertEquals("Token type mismatch at position " + i, expectedTypes[i], tokens.get(i).type);
+        }
+        // everything else is an identifier which happens to look like a keyword
+        for (int i = expectedTypes.length; i < tokens.size() - 1; i++) {
+            assertEquals("Expected identifier at position " + i, TokenType.IDENTIFIER, tokens.get(i).type);
+        }
+    }
+
+    @Test
+    public void testNumberLiterals() {
+        String[] literals = {
+            "0", "7", "0.0", "1.5", "12.25", "0.1", "0.3", "3.141592653589793",
+            "9007199254740992", "9007199254740993", "123456789012345678901234567890",
+            "0.0000000000000000000001", "0.00000000000000000000001", "00000000000000000000000012.5",
+            "1.7976931348623157", "4.9406564584124654",
+        };
+        for (String literal : literals) {
+            assertEquals("Number mismatch for " + literal, Double.parseDouble(literal),
+                    Scanner.parseNumber(literal, 0, literal.length()), 0.0);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            String literal = Math.abs(random.nextLong() % 100000000L) + "." + Math.abs(random.nextLong() % 1000000000000L);
+            assertEquals("Number mismatch for " + literal, Double.parseDouble(literal),
+                    Scanner.parseNumber(literal, 0, literal.length()), 0.0);
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class SessionTest {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final LoxContext context = new LoxContext(
+            new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+
+    @Test
+    public void testOldLinesAreCollected() throws Exception {
+        context.run("fun f() { var x = 40; return x + 2; }", true);
+        WeakReference<Expr> line = run("{ var a = 1; print a; }");
+        for (int i = 0; i < 50 && line.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        // nothing holds on to the line once it ran, resolutions included.
+        assertNull(line.get());
+        // while the function of an earlier line still runs fine.
+        context.run("print f();", true);
+        assertEquals("1\n42\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testManyLines() {
+        context.run("var total = 0;", true);
+        for (int i = 0; i < 10000; i++) {
+            context.run("{ var a = " + i + "; total = a; fun g(b) { return total + b; } total = g(1); }", true);
+        }
+        context.run("total;", true);
+        assertEquals("10000\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    // runs a line, and returns a reference to the variable it reads.
+    private WeakReference<Expr> run(String source) {
+        List<Stmt> statements = context.parse(source, true);
+        Stmt.Print print = (Stmt.Print) ((Stmt.Block) statements.get(0)).statements.get(1);
+        WeakReference<Expr> variable = new WeakReference<>(print.expression);
+        assertEquals(0, context.interpret(statements));
+        return variable;
+    }
+}
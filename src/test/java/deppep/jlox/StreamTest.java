@@ -0,0 +1,92 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+
+public class StreamTest {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private final LoxContext context = new LoxContext(
+            new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(err, true, StandardCharsets.UTF_8));
+
+    @Test
+    public void testLargeInput() throws Exception {
+        // well past the window, with a string longer than it.
+        StringBuilder program = new StringBuilder("var total = 0;\n");
+        for (int i = 0; i < 20000; i++) {
+            program.append("total = total + ").append(i).append(".5; // ").append(i).append('\n');
+        }
+        String text = "ab".repeat(100_000);
+        program.append("print total == 200000000;\nvar s = \"").append(text).append("\";\nprint s == \"").append(text).append("\";\n");
+        assertEquals(0, context.run(new StringReader(program.toString())));
+        assertEquals("true\ntrue\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStatementsRunAsTheyArrive() throws Exception {
+        PipedWriter writer = new PipedWriter();
+        PipedReader reader = new PipedReader(writer);
+        int[] status = new int[1];
+        Thread runner = new Thread(() -> {
+            try {
+                status[0] = context.run(reader);
+            } catch (Exception error) {
+                status[0] = -1;
+            }
+        });
+        runner.start();
+        writer.write("print \"first\";\n");
+        writer.flush();
+        // output is flushed while waiting on more input.
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (out.size() == 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals("first\n", out.toString(StandardCharsets.UTF_8));
+        writer.write("print 1.5\n  + 1;\n");
+        writer.close();
+        runner.join();
+        assertEquals(0, status[0]);
+        assertEquals("first\n2.5\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testNoReadingAhead() throws Exception {
+        // the statement is complete with its last char: nothing past it is waited for.
+        PipedWriter writer = new PipedWriter();
+        PipedReader reader = new PipedReader(writer);
+        Thread runner = new Thread(() -> {
+            try {
+                context.run(reader);
+            } catch (Exception ignored) {
+                // the pipe breaks once the test is done.
+            }
+        });
+        runner.setDaemon(true);
+        runner.start();
+        writer.write("print 1;\n");
+        writer.flush();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (out.size() == 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals("1\n", out.toString(StandardCharsets.UTF_8));
+        writer.close();
+        runner.join();
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        assertEquals(65, context.run(new StringReader("print 1;\nprint ;\nprint 2;\nprint );")));
+        assertEquals(70, context.run(new StringReader("print 3;\nprint x;\nprint 4;")));
+        assertEquals("1\n3\n", out.toString(StandardCharsets.UTF_8));
+        assertEquals("[line 2] Error at ';': Expect expression\n" +
+                "[line 4] Error at ')': Expect expression\n" +
+                "[line 2] Undefined variable 'x'.\n", err.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,47 @@
+package deppep.jlox;
+
+import org.junit.Test;
+import java.util.List;
+import static org.junit.Assert.*;
+
+
+public class TokenBufferTest {
+    @Test
+    public void bufferMatchesTokenListTest() {
+        String source = "var a = \"hello\";\nprint a + 12.5; // comment\n{ a = a >= 1; }";
+        TokenBuffer buffer = new Scanner(source).scanBuffer();
+        List<Token> tokens = new Scanner(source).scanTokens();
+
+        assertEquals("Number of tokens doesn't match", tokens.size(), buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            Token token = tokens.get(i);
+            assertEquals("Token type mismatch at position " + i, token.type, buffer.type(i));
+            assertEquals("Lexeme mismatch at position " + i, token.lexeme, buffer.lexeme(i));
+            assertEquals("Literal mismatch at position " + i, token.literal, buffer.literal(i));
+            assertEquals("Line mismatch at position " + i, token.line(), buffer.line(i));
+        }
+        assertEquals("hello", buffer.literal(3));
+        assertEquals(12.5, buffer.literal(8));
+    }
+
+    @Test
+    public void parserOverBufferTest() {
+        String input = "1.0 + (2.0 + 3.2) + 5.0 * 4.0;";
+        List<Stmt> stmts = new Parser(new Scanner(input).scanBuffer()).parse();
+        Expr expr = ((Stmt.Expression)stmts.getFirst()).expression;
+
+        assertEquals("(+ (+ 1.0 (group (+ 2.0 3.2))) (* 5.0 4.0))", new AstPrinter().print(expr));
+    }
+
+    @Test
+    public void bytesPerTokenTest() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            source.append("var x").append(i).append(" = x").append(i).append(" + 1;\n");
+        }
+        TokenBuffer buffer = new Scanner(source.toString()).scanBuffer();
+
+        // four ints per token, plus whatever capacity is left over after growing.
+        assertTrue("Buffer should take at most 32 bytes per token", buffer.bytesPerToken() <= 32);
+    }
+}
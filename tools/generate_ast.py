@@ -41,12 +41,19 @@ PRODUCTIONS = {
         ("If", (("Expr", "condition"), ("Stmt", "thenBranch"), ("Stmt", "elseBranch"),)),
         ("Print", (("Expr", "expression"),)),
         ("Return", (("Token", "keyword"), ("Expr", "value"),)),
-        ("While", (("Expr", "condition"), ("Stmt", "body"),)),
+        ("While", (("Token", "keyword"), ("Expr", "condition"), ("Stmt", "body"),)),
         ("Break", (("Token", "keyword"),)),
         ("Var", (("Token", "name"), ("Expr", "initializer"),)),
     )
 }
 
+# fields filled in after parsing, rather than kept in side tables: they go away with
+# the tree. (type, name, initial value, comment), for the base class or a production.
+MUTABLE = {
+    "Expr": (("int", "depth", "-1", "set by the resolver: how many scopes up a variable lives, -1 for globals."),),
+    "AnonFunction": (("Boolean", "escapes", "null", "whether calls may leak their frame, see `EscapeAnalysis`."),),
+}
+
 
 def arglist(body: tuple):
     return ', '.join([' '.join(p) for p in body])
@@ -70,7 +77,14 @@ def write_imports(key: str, write: Callable=print):
     write("")
     
 def write_productions(key: str, write: Callable=print):
-    write(f"abstract class {key} {{")
+    # the hierarchy is sealed and its classes final: the interpreter dispatches by
+    # testing for node types rather than with `accept`, and a type test against a
+    # final class is a single comparison.
+    permits = [f"{key}.{head}" for head, _ in PRODUCTIONS[key]]
+    write(f"abstract sealed class {key} permits")
+    for i in range(0, len(permits), 5):
+        last = i + 5 >= len(permits)
+        write(f"{INDENT}{INDENT}{', '.join(permits[i:i + 5])}{' {' if last else ','}")
     
     # declare visitor interfaces
     write(f"{INDENT}interface Visitor<R> {{")
@@ -82,7 +96,7 @@ def write_productions(key: str, write: Callable=print):
     # expression classes
     for head, body in PRODUCTIONS[key]:        
         # builder
-        write(f"{INDENT}static class {head} extends {key} {{")
+        write(f"{INDENT}static final class {head} extends {key} {{")
         write(f"{INDENT}{INDENT}{head}({arglist(body)}) {{")
         for _, name in body:
             write(f"{INDENT}{INDENT}{INDENT}this.{name}={name};")
@@ -99,13 +113,22 @@ def write_productions(key: str, write: Callable=print):
         # finals
         for type_, name in body:
             write(f"{INDENT}{INDENT}final {type_} {name};")
+        write_mutable(head, INDENT * 2, write)
         write(f"{INDENT}}}")
         write("")
 
+    write_mutable(key, INDENT, write)
     write(f"{INDENT}abstract <R> R accept(Visitor<R> visitor);")
     write("}")
     write("")
 
+def write_mutable(owner: str, indent: str, write: Callable=print):
+    for type_, name, value, comment in MUTABLE.get(owner, ()):
+        write(f"{indent}// {comment}")
+        write(f"{indent}{type_} {name} = {value};")
+    if owner in MUTABLE and indent == INDENT:
+        write("")
+
 def writer(line: str, f: IO):
     f.write(line + "\n")
 